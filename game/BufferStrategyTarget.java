@@ -0,0 +1,50 @@
+package game;
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+
+// Renders into a window's BufferStrategy
+public class BufferStrategyTarget implements RenderTarget {
+    private final Component component;
+    private final BufferStrategy bufferStrategy;
+
+    public BufferStrategyTarget(Component component, BufferStrategy bufferStrategy) {
+        this.component = component;
+        this.bufferStrategy = bufferStrategy;
+    }
+
+    @Override
+    public Graphics2D beginFrame() {
+        return (Graphics2D) this.bufferStrategy.getDrawGraphics();
+    }
+
+    @Override
+    public boolean endFrame(Graphics2D g) {
+        g.dispose();
+        if (this.bufferStrategy.contentsRestored()) return false; // Drawn into a buffer that was just restored
+        this.bufferStrategy.show();
+        return !this.bufferStrategy.contentsLost();
+    }
+
+    // A blitted back buffer keeps the last frame; a flipped one only if the flip copies it
+    @Override
+    public boolean preservesContents() {
+        BufferCapabilities capabilities = this.bufferStrategy.getCapabilities();
+        return !capabilities.isPageFlipping() || capabilities.getFlipContents() == BufferCapabilities.FlipContents.COPIED;
+    }
+
+    @Override
+    public GraphicsConfiguration getConfiguration() {
+        return this.component.getGraphicsConfiguration();
+    }
+
+    @Override
+    public int getWidth() {
+        return this.component.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return this.component.getHeight();
+    }
+}
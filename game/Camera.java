@@ -0,0 +1,71 @@
+package game;
+
+import game.object.Dungeon;
+
+// The part of the current room the window shows. It keeps the followed position centered, but never scrolls past the
+// room's edges, so rooms no bigger than the window stay put. The position is kept in pixels, so the view scrolls
+// along with a sprite sliding between tiles instead of jumping a whole tile when the step starts.
+public class Camera {
+    private final int viewWidth; // In tiles
+    private final int viewHeight;
+    private final int tileSize;
+    private int pixelX; // Room pixel at the window's top left corner
+    private int pixelY;
+
+    public Camera(int viewWidth, int viewHeight, int tileSize) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.tileSize = tileSize;
+    }
+
+    // Follow a position in tiles, which is fractional while the followed entity steps
+    public void follow(Dungeon dungeon, float tileX, float tileY) {
+        this.pixelX = Math.clamp(Math.round((tileX - this.viewWidth / 2) * this.tileSize), 0,
+                Math.max(0, (dungeon.getWidth() - this.viewWidth) * this.tileSize));
+        this.pixelY = Math.clamp(Math.round((tileY - this.viewHeight / 2) * this.tileSize), 0,
+                Math.max(0, (dungeon.getHeight() - this.viewHeight) * this.tileSize));
+    }
+
+    // Room tile under a window pixel
+    public int toTileX(int screenX) {
+        return (this.pixelX + screenX) / this.tileSize;
+    }
+
+    public int toTileY(int screenY) {
+        return (this.pixelY + screenY) / this.tileSize;
+    }
+
+    // Room tile at the window's top left corner; mid-scroll it is partly out of view
+    public int getX() {
+        return this.pixelX / this.tileSize;
+    }
+
+    public int getY() {
+        return this.pixelY / this.tileSize;
+    }
+
+    // Pixels of the top left tile that are scrolled out of view
+    public int getOffsetX() {
+        return this.pixelX % this.tileSize;
+    }
+
+    public int getOffsetY() {
+        return this.pixelY % this.tileSize;
+    }
+
+    public int getPixelX() {
+        return this.pixelX;
+    }
+
+    public int getPixelY() {
+        return this.pixelY;
+    }
+
+    public int getViewWidth() {
+        return this.viewWidth;
+    }
+
+    public int getViewHeight() {
+        return this.viewHeight;
+    }
+}
@@ -1,5 +1,6 @@
 package game;
 
+import game.object.PathfinderMode;
 import game.object.entity.EntityType;
 import game.object.entity.PlayerCharacter;
 
@@ -9,12 +10,33 @@ import java.util.Map;
 
 public abstract class Constants {
     public static final int GAME_TILE_SIZE = 30; // Safe to modify; must always be a multiple of 15
-    public static final int GAME_TILE_NUM = 29; // Amount of tiles in the x and y directions
+    public static final int GAME_TILE_NUM = 29; // Amount of tiles the window shows in the x and y directions
+    public static final int ROOM_SIZE = Integer.getInteger("game.roomSize", GAME_TILE_NUM); // Tiles per room side; larger rooms scroll
+    public static final int MAX_STATIC_LAYER_SIZE = 4096; // Rooms wider or taller than this many pixels are drawn tile by tile
     public static final int GAME_AUTO_MOVEMENT_DELAY = 150; // in milliseconds
+    public static final int GAME_ANIMATION_RATE = Integer.getInteger("game.animationRate", 120); // Animation clock ticks per second
+    public static final int GAME_INPUT_QUEUE_SIZE = 3; // Moves and clicks remembered while walking; more are dropped
+    public static final PathfinderMode PATHFINDER_MODE = PathfinderMode.valueOf(System.getProperty("game.pathfinder", "A_STAR"));
 
-    public static final int MAP_GRID_SIZE = 3; // Size of the grid which stores individual dungeon rooms
+    public static final int MAP_GRID_SIZE = Integer.getInteger("game.mapGridSize", 3); // Size of the grid which stores individual dungeon rooms
+    public static final int MAP_ROOM_COUNT = Integer.getInteger("game.mapRoomCount", 0); // 0 picks a count from the target range below
     public static final double DUNGEON_TARGET_COUNT_LOW = 0.4;
     public static final double DUNGEON_TARGET_COUNT_HIGH = 0.8;
+    public static final int LEVEL_PREFETCH_DEPTH = 2; // Levels built ahead in the background
+    public static final String LEVEL_SAVE_DIRECTORY = System.getProperty("game.saveDir"); // Levels are kept here as level-N.map; unset disables saving
+    public static final int ROOM_CACHE_SIZE = 16; // Unmodified rooms beyond this are evicted and rebuilt on demand
+    public static final int PATHFINDER_NODE_BUDGET = Integer.getInteger("game.pathfinderBudget", 250_000); // Expanded nodes before a search gives up
+    public static final int BULLDOZER_WALL_COST = Integer.getInteger("game.bulldozerWallCost", 5); // Path cost of digging through one wall tile
+    public static final boolean GAME_LOOP = Boolean.getBoolean("game.loop"); // Dedicated game thread instead of Swing-driven repaints
+    public static final int GAME_TICK_RATE = Integer.getInteger("game.tickRate", 60); // Simulation ticks per second
+    public static final int GAME_FRAME_RATE = Integer.getInteger("game.frameRate", 60); // Rendered frames per second
+    public static final boolean GAME_TOOLKIT_SYNC = Boolean.getBoolean("game.toolkitSync"); // Toolkit.sync() after each frame; not vertical sync
+    public static final int TORCH_RADIUS = 7; // Tiles the torch lights around the player
+    public static final int TORCH_EDGE_ALPHA = 200; // Darkness at the edge of the light, 0 to 255
+    public static final int MINIMAP_MAX_SIZE = 256; // Pixels per side before the minimap switches to a pixel per room
+    public static final int MINIMAP_DISPLAY_SIZE = 160; // Approximate on-screen size of the minimap
+    public static final Color MINIMAP_BACKGROUND = new Color(0, 0, 0, 160);
+    public static final int DISTANCE_FIELD_CACHE_SIZE = 8; // Per room; four doors, the exit and a few recent targets
 
     public static final int PAUSE_TILE_SIZE = 150;
     public static final int PAUSE_WINDOW_WIDTH = 3;
@@ -0,0 +1,30 @@
+package game;
+
+import game.object.Dungeon;
+import game.object.FlowField;
+import game.object.entity.DynamicEntity;
+
+import java.util.List;
+
+// Moves many agents towards one target per tick. All agents share the room's flow field for the target, which is
+// rebuilt at most once per tick and only when the room's tiles changed, so an agent's step costs O(1).
+public class FlowFieldService {
+    // Step every agent one tile towards the target; returns how many of them moved
+    public int advance(Dungeon dungeon, List<? extends DynamicEntity> agents, int targetX, int targetY) {
+        FlowField flowField = dungeon.getDistanceField(targetX, targetY).getFlowField();
+
+        int moved = 0;
+        for (DynamicEntity agent : agents) {
+            int direction = flowField.getDirection(agent.getX(), agent.getY());
+            if (direction == FlowField.NONE) continue;
+
+            int dx = FlowField.dx(direction);
+            int dy = FlowField.dy(direction);
+            if (dungeon.isOccupied(agent.getX() + dx, agent.getY() + dy)) continue; // Wait behind another agent, or next to the target's occupant
+
+            agent.step(dungeon, dx, dy);
+            moved++;
+        }
+        return moved;
+    }
+}
@@ -7,6 +7,7 @@ import game.object.entity.Player;
 import game.object.entity.PlayerCharacter;
 import game.object.entity.StaticEntity;
 import game.ui.Message;
+import game.ui.Minimap;
 
 import javax.swing.*;
 import java.awt.*;
@@ -14,23 +15,29 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.image.BufferStrategy;
-import java.util.concurrent.CompletableFuture;
 
 public class Game extends JFrame {
     private final PlayerCharacter character;
-    private final BufferStrategy bufferStrategy;
+    private final transient RenderTarget renderTarget;
     private final Renderer renderer;
     private final GameState state;
     private final Mover mover;
+    private final transient LevelLoader levelLoader;
+    private final transient PathService pathService;
+    private final transient Camera camera;
+    private final transient GameLoop gameLoop; // Only with -Dgame.loop=true
     private Player player;
     private GameMap map;
 
     public Game(PlayerCharacter character) {
         this.state = new GameState();
         this.character = character;
-        this.renderer = new Renderer(this);
+        this.camera = new Camera(Constants.GAME_TILE_NUM, Constants.GAME_TILE_NUM, Constants.GAME_TILE_SIZE);
+        this.renderer = new Renderer(this.state, this.camera, Constants.GAME_TILE_SIZE);
         this.mover = new Mover(this);
+        this.levelLoader = new LevelLoader();
+        this.pathService = new PathService();
+        this.gameLoop = Constants.GAME_LOOP ? new GameLoop(this) : null; // Started once the window is up
 
         setTitle("Dungeon Crawler");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -50,86 +57,118 @@ public class Game extends JFrame {
         setLocation((screenSize.width - getWidth()) / 2, (screenSize.height - getHeight()) / 2);
 
         createBufferStrategy(2);
-        this.bufferStrategy = getBufferStrategy();
+        this.renderTarget = new BufferStrategyTarget(this, getBufferStrategy());
 
         repaint();
         setVisible(true);
+
+        if (this.gameLoop != null) this.gameLoop.start();
     }
 
     private void handleKeyboardInput() {
         addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
-                if (Game.this.state.isMovementInProgress()) return;
-
                 int key = e.getKeyCode();
-                int dx = 0, dy = 0;
-
-                switch (key) {
-                    case KeyEvent.VK_W, KeyEvent.VK_UP:
-                        dy = -1;
-                        break;
-                    case KeyEvent.VK_A, KeyEvent.VK_LEFT:
-                        dx = -1;
-                        break;
-                    case KeyEvent.VK_S, KeyEvent.VK_DOWN:
-                        dy = 1;
-                        break;
-                    case KeyEvent.VK_D, KeyEvent.VK_RIGHT:
-                        dx = 1;
-                        break;
-                    case KeyEvent.VK_B:
-                        bulldozerMode();
-                        break;
-                    case KeyEvent.VK_ESCAPE:
-                        pause();
-                        break;
+                if (key == KeyEvent.VK_ESCAPE) { // The pause menu is Swing UI, so it stays on the event thread
+                    if (!Game.this.state.isMovementInProgress()) pause();
+                    return;
                 }
-
-                Game.this.mover.moveBy(Game.this.player, dx, dy);
+                runOnGameThread(() -> handleKey(key));
             }
         });
     }
 
+    // Moves made during a walk are queued by the mover
+    private void handleKey(int key) {
+        int dx = 0, dy = 0;
+
+        switch (key) {
+            case KeyEvent.VK_W, KeyEvent.VK_UP:
+                dy = -1;
+                break;
+            case KeyEvent.VK_A, KeyEvent.VK_LEFT:
+                dx = -1;
+                break;
+            case KeyEvent.VK_S, KeyEvent.VK_DOWN:
+                dy = 1;
+                break;
+            case KeyEvent.VK_D, KeyEvent.VK_RIGHT:
+                dx = 1;
+                break;
+            case KeyEvent.VK_B:
+                bulldozerMode();
+                break;
+            case KeyEvent.VK_T:
+                torchMode();
+                break;
+            case KeyEvent.VK_M:
+                this.state.toggleMinimap();
+                repaint();
+                break;
+            case KeyEvent.VK_E:
+                this.mover.moveToExit(this.player);
+                return;
+        }
+
+        this.mover.moveBy(this.player, dx, dy);
+    }
+
     private void handleMouseInput() {
         addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                if (Game.this.state.isMovementInProgress()) return;
-
-                int x = e.getX() / Constants.GAME_TILE_SIZE;
-                int y = e.getY() / Constants.GAME_TILE_SIZE;
-                Game.this.mover.moveTo(Game.this.player, x, y);
+                int screenX = e.getX();
+                int screenY = e.getY();
+                runOnGameThread(() -> { // The camera belongs to the thread that renders
+                    int x = Game.this.camera.toTileX(screenX);
+                    int y = Game.this.camera.toTileY(screenY);
+                    Game.this.mover.moveTo(Game.this.player, x, y);
+                });
             }
         });
     }
 
     private void startLevel(boolean initial) {
-        if (!initial)
-            this.state.getCurrentDungeon().setTile(player.getX(), player.getY(), new StaticEntity(EntityType.FLOOR)); // Clear the player's previous position
-
-        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> this.map = new GameMap(Constants.GAME_TILE_NUM, Constants.GAME_TILE_NUM, Constants.MAP_GRID_SIZE));
-
-        future.thenRun(() -> {
-            this.state.setCurrentDungeon(map.getStartingDungeon());
-            this.player = new Player(this.state.getCurrentDungeon(), 0, 0, Constants.PLAYER_IMAGE_MAP.get(this.character), this);
+        if (!initial) {
+            this.state.getCurrentDungeon().setTile(player.getX(), player.getY(), StaticEntity.of(EntityType.FLOOR)); // Clear the player's previous position
+            this.map.releaseStaticLayers(); // The old level is never drawn again
+        }
 
-            if (initial) {
-                this.state.setMessage(new Message("Find Ciri to advance to next level", this));
-                this.state.getMessage().display(1500);
-            } else {
-                this.state.setMessage(new Message("Welcome to level " + this.state.getLevel(), this));
-                this.state.getMessage().display(750);
-            }
-        });
+        // The level is usually already built in the background, so this is just a swap
+        this.map = this.levelLoader.nextLevel();
+        Minimap minimap = new Minimap(this.map);
+        this.map.setTileListener(minimap);
+        this.state.setMinimap(minimap);
+        this.state.setCurrentDungeon(map.getStartingDungeon());
+        this.player = new Player(this.state.getCurrentDungeon(), 0, 0, this.character, this);
+        this.state.setPlayer(this.player);
+
+        if (initial) {
+            this.state.setMessage(new Message("Find Ciri to advance to next level", this));
+            this.state.getMessage().display(1500);
+        } else {
+            this.state.setMessage(new Message("Welcome to level " + this.state.getLevel(), this));
+            this.state.getMessage().display(750);
+        }
     }
 
     public void advanceToNextLevel() {
+        this.mover.stop();
         this.state.incLevel();
         startLevel(false);
         repaint();
     }
 
+    @Override
+    public void dispose() {
+        this.levelLoader.shutdown();
+        this.pathService.shutdown();
+        if (this.gameLoop != null) this.gameLoop.stop();
+        this.map.releaseStaticLayers();
+        super.dispose();
+    }
+
     // Toggle bulldozer mode
     private void bulldozerMode() {
         GameState.toggleBulldozerMode();
@@ -143,8 +182,22 @@ public class Game extends JFrame {
         this.state.getMessage().display(750);
     }
 
+    // Toggle torch mode
+    private void torchMode() {
+        this.state.toggleTorchMode();
+
+        if (this.state.isTorchMode()) {
+            this.state.setMessage(new Message("Torch lit 🔥", this));
+        } else {
+            this.state.setMessage(new Message("Torch put out 🔥", this));
+        }
+
+        this.state.getMessage().display(750);
+    }
+
     public void pause() {
         this.state.togglePause();
+        if (this.gameLoop != null) this.gameLoop.setPaused(this.state.isPaused()); // Freeze input, walks and messages
 
         if (this.state.isPaused()) {
             PauseMenu pauseMenu = new PauseMenu(this);
@@ -152,17 +205,26 @@ public class Game extends JFrame {
         }
     }
 
-    // Override the paint method to render directly to the buffer strategy
+    // With the game loop, state changes happen on its thread; without it, on the event thread as before
+    public void runOnGameThread(Runnable task) {
+        if (this.gameLoop != null) {
+            this.gameLoop.submit(task);
+        } else if (SwingUtilities.isEventDispatchThread()) {
+            task.run();
+        } else {
+            SwingUtilities.invokeLater(task);
+        }
+    }
+
+    // Override the paint method to render directly to the buffer strategy, limited to the repainted region; the game
+    // loop renders on its own
     @Override
     public void paint(Graphics g) {
-        do {
-            do {
-                Graphics bufferGraphics = bufferStrategy.getDrawGraphics();
-                renderer.render(bufferGraphics);
-                bufferGraphics.dispose();
-            } while (bufferStrategy.contentsRestored());
-            bufferStrategy.show();
-        } while (bufferStrategy.contentsLost());
+        if (this.gameLoop == null) this.renderer.render(this.renderTarget, g.getClipBounds());
+    }
+
+    void renderFrame() {
+        this.renderer.render(this.renderTarget);
     }
 
     public GameState getGameState() {
@@ -173,6 +235,15 @@ public class Game extends JFrame {
         return this.renderer;
     }
 
+    // Null unless the game loop is enabled; exposes the update and render timings
+    public GameLoop getGameLoop() {
+        return this.gameLoop;
+    }
+
+    public PathService getPathService() {
+        return this.pathService;
+    }
+
     public GameMap getMap() {
         return this.map;
     }
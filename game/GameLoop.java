@@ -0,0 +1,119 @@
+package game;
+
+import game.ui.Message;
+
+import java.awt.*;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Optional dedicated game thread (-Dgame.loop=true). The simulation advances in fixed ticks that run the queued
+// input and timer events, and frames are rendered actively at their own rate, so frame pacing no longer depends on
+// when Swing gets around to a repaint(). All game state changes happen on this thread while it runs.
+public class GameLoop implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(GameLoop.class.getName());
+    private static final int MAX_TICKS_PER_FRAME = 5; // After a longer stall the backlog is dropped instead of replayed
+
+    private final Game game;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final long tickNanos = 1_000_000_000L / Constants.GAME_TICK_RATE;
+    private final long frameNanos = 1_000_000_000L / Constants.GAME_FRAME_RATE;
+    private volatile Thread thread; // Created by start(), so the constructor doesn't hand out this
+    private volatile boolean running;
+    private volatile boolean paused; // Frames are still drawn, but nothing updates
+    private volatile long updateNanos; // Time spent in the ticks of the last frame
+    private volatile long renderNanos; // Time spent rendering the last frame
+    private volatile long frames;
+
+    public GameLoop(Game game) {
+        this.game = game;
+    }
+
+    public void start() {
+        this.running = true;
+        this.thread = Thread.ofPlatform().name("game-loop").daemon().start(this);
+    }
+
+    public void stop() {
+        this.running = false;
+        if (this.thread != null) LockSupport.unpark(this.thread);
+    }
+
+    // Run the task at the start of the next tick
+    public void submit(Runnable task) {
+        this.pending.add(task);
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public boolean isGameThread() {
+        return Thread.currentThread() == this.thread;
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long lag = 0;
+        long nextFrame = previous;
+
+        while (this.running) {
+            long now = System.nanoTime();
+            lag += now - previous;
+            previous = now;
+
+            if (this.paused) lag = 0; // Resume without catching up on the paused time
+            int ticks = 0;
+            while (lag >= this.tickNanos && ticks < MAX_TICKS_PER_FRAME) {
+                update();
+                lag -= this.tickNanos;
+                ticks++;
+            }
+            if (ticks == MAX_TICKS_PER_FRAME) lag = 0;
+            long rendered = System.nanoTime();
+            if (ticks > 0) this.updateNanos = rendered - now;
+
+            if (rendered >= nextFrame) {
+                this.game.renderFrame();
+                // Only flushes the window system's pending drawing, e.g. on X11; it doesn't wait for the vertical blank
+                if (Constants.GAME_TOOLKIT_SYNC) Toolkit.getDefaultToolkit().sync();
+                this.renderNanos = System.nanoTime() - rendered;
+                this.frames++;
+                nextFrame = Math.max(nextFrame + this.frameNanos, rendered); // Don't try to catch up on missed frames
+            }
+
+            long nextTick = previous + this.tickNanos - lag;
+            long wait = Math.min(nextTick, nextFrame) - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+        }
+    }
+
+    private void update() {
+        Runnable task;
+        while ((task = this.pending.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "An exception occurred", e); // Keep the loop alive
+            }
+        }
+
+        Message message = this.game.getGameState().getMessage();
+        if (message != null) message.update(System.nanoTime());
+    }
+
+    public long getUpdateNanos() {
+        return this.updateNanos;
+    }
+
+    public long getRenderNanos() {
+        return this.renderNanos;
+    }
+
+    public long getFrames() {
+        return this.frames;
+    }
+}
@@ -1,15 +1,21 @@
 package game;
 
 import game.object.Dungeon;
+import game.object.entity.DynamicEntity;
 import game.ui.Message;
+import game.ui.Minimap;
 
 public class GameState {
-    private static boolean bulldozerMode = false;
+    private static volatile boolean bulldozerMode = false; // Also read by the pathfinder's worker thread
     private int level;
     private boolean paused = false;
-    private boolean movementInProgress = false;
+    private volatile boolean movementInProgress = false; // Also checked on the event thread before pausing
+    private boolean torchMode = false;
+    private boolean minimapShown = false;
     private Dungeon currentDungeon;
     private Message message;
+    private DynamicEntity player;
+    private Minimap minimap; // Of the current level
 
     public GameState() {
         this.level = 1;
@@ -39,6 +45,22 @@ public class GameState {
         this.paused = !this.paused;
     }
 
+    public boolean isTorchMode() {
+        return this.torchMode;
+    }
+
+    public void toggleTorchMode() {
+        this.torchMode = !this.torchMode;
+    }
+
+    public boolean isMinimapShown() {
+        return this.minimapShown;
+    }
+
+    public void toggleMinimap() {
+        this.minimapShown = !this.minimapShown;
+    }
+
     public boolean isMovementInProgress() {
         return movementInProgress;
     }
@@ -55,6 +77,22 @@ public class GameState {
         this.currentDungeon = dungeon;
     }
 
+    public DynamicEntity getPlayer() {
+        return this.player;
+    }
+
+    public void setPlayer(DynamicEntity player) {
+        this.player = player;
+    }
+
+    public Minimap getMinimap() {
+        return this.minimap;
+    }
+
+    public void setMinimap(Minimap minimap) {
+        this.minimap = minimap;
+    }
+
     public Message getMessage() {
         return this.message;
     }
@@ -1,47 +1,65 @@
 package game;
 
+import game.object.entity.EntityType;
+import game.object.entity.PlayerCharacter;
+
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.io.IOException;
 import java.util.List;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+// Source images are loaded once and turned into one SpriteAtlas per tile size. Sprites are numbered by
+// EntityType ordinal, followed by the PlayerCharacter ordinals.
 public class ImageCache {
-    private static final Map<String, Image> cache = new HashMap<>();
+    private static final EntityType[] TYPES = EntityType.values();
+    public static final int SPRITE_COUNT = TYPES.length + PlayerCharacter.values().length;
+    private static final Image[] sources = new Image[SPRITE_COUNT];
+    private static final Map<Integer, SpriteAtlas> atlases = new ConcurrentHashMap<>(); // By tile size
     private static final Logger LOGGER = Logger.getLogger(ImageCache.class.getName());
 
     public ImageCache() {
     }
 
-    public static Image getImage(String path) {
-        return cache.get(path);
+    public static int spriteIndex(EntityType type) {
+        return type.ordinal();
+    }
+
+    public static int spriteIndex(PlayerCharacter character) {
+        return TYPES.length + character.ordinal();
+    }
+
+    // Built on first request for a tile size
+    public static SpriteAtlas getAtlas(int tileSize) {
+        return atlases.computeIfAbsent(tileSize, size -> new SpriteAtlas(sources, size));
     }
 
     public void cacheImages() {
-        ArrayList<String> imagePaths = new ArrayList<>();
-        imagePaths.addAll(Constants.PLAYER_IMAGE_MAP.values());
-        imagePaths.addAll(Constants.OBJECT_IMAGE_MAP.values());
+        Map<Integer, String> imagePaths = new HashMap<>();
+        Constants.OBJECT_IMAGE_MAP.forEach((type, path) -> imagePaths.put(spriteIndex(type), path));
+        Constants.PLAYER_IMAGE_MAP.forEach((character, path) -> imagePaths.put(spriteIndex(character), path));
 
         try (ExecutorService executor = Executors.newFixedThreadPool(Constants.IMAGE_CACHE_THREAD_NUM)) {
             // Create a CompletableFuture for each image path
-            List<CompletableFuture<Void>> futures = imagePaths.stream()
-                    .map(path -> CompletableFuture.runAsync(() -> cacheImage(path), executor))
+            List<CompletableFuture<Void>> futures = imagePaths.entrySet().stream()
+                    .map(entry -> CompletableFuture.runAsync(() -> cacheImage(entry.getKey(), entry.getValue()), executor))
                     .toList();
 
             CompletableFuture<Void> allFutures = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
             allFutures.join(); // Wait for all tasks to complete
         }
+        atlases.clear(); // Atlases built before loading finished would be missing sprites
     }
 
-    private void cacheImage(String path) {
+    private void cacheImage(int sprite, String path) {
         try {
-            Image image = ImageIO.read(Objects.requireNonNull(getClass().getResource(path)));
-            cache.put(path, image);
+            sources[sprite] = ImageIO.read(Objects.requireNonNull(getClass().getResource(path)));
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "An exception occurred", e);
         }
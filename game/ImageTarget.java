@@ -0,0 +1,48 @@
+package game;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// Renders into an off-screen image; works with java.awt.headless=true
+public class ImageTarget implements RenderTarget {
+    private final BufferedImage image;
+
+    public ImageTarget(int width, int height) {
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Override
+    public Graphics2D beginFrame() {
+        return this.image.createGraphics();
+    }
+
+    @Override
+    public boolean endFrame(Graphics2D g) {
+        g.dispose();
+        return true; // Image contents are never lost
+    }
+
+    @Override
+    public boolean preservesContents() {
+        return true;
+    }
+
+    @Override
+    public GraphicsConfiguration getConfiguration() {
+        return null; // Static layers fall back to plain images
+    }
+
+    @Override
+    public int getWidth() {
+        return this.image.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return this.image.getHeight();
+    }
+
+    public BufferedImage getImage() {
+        return this.image;
+    }
+}
@@ -0,0 +1,88 @@
+package game;
+
+import game.object.GameMap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Builds upcoming levels in the background so a level transition only has to swap in a finished map. With
+// -Dgame.saveDir, each level is saved when it is first played and opened from its file on later runs instead of being
+// generated again.
+public class LevelLoader {
+    private static final Logger LOGGER = Logger.getLogger(LevelLoader.class.getName());
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("level-prefetch").daemon().factory());
+    private final Deque<Future<GameMap>> prefetched = new ArrayDeque<>(); // Never holds more than LEVEL_PREFETCH_DEPTH levels
+    private final SplittableRandom seeds = new SplittableRandom();
+    private int level; // Number of the level handed out last
+
+    // Open the next level's saved file, or take the next prefetched level, or generate it inline if it isn't
+    // finished yet
+    public GameMap nextLevel() {
+        this.level++;
+        Path file = Constants.LEVEL_SAVE_DIRECTORY == null ? null : Path.of(Constants.LEVEL_SAVE_DIRECTORY, "level-" + this.level + ".map");
+        if (file != null && Files.isRegularFile(file)) {
+            try {
+                return GameMap.load(file); // The prefetched levels stay queued for levels that have no file yet
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "An exception occurred", e); // Fall back to a new level, which replaces the file
+            }
+        }
+
+        GameMap map = null;
+
+        Future<GameMap> next = this.prefetched.peekFirst();
+        if (next != null && next.isDone()) {
+            this.prefetched.pollFirst();
+            try {
+                map = next.get();
+            } catch (InterruptedException | ExecutionException e) {
+                LOGGER.log(Level.SEVERE, "An exception occurred", e);
+            }
+        }
+
+        if (map == null) { // The prefetched level stays queued for the level after this one
+            map = createLevel(this.seeds.nextLong());
+        }
+
+        prefetch();
+        if (file != null) save(map, file);
+        return map;
+    }
+
+    // Only the rooms built so far are written; the rest are rebuilt from the seed when the file is opened
+    private void save(GameMap map, Path file) {
+        try {
+            Files.createDirectories(file.getParent());
+            map.save(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "An exception occurred", e); // The level is still playable
+        }
+    }
+
+    private void prefetch() {
+        while (this.prefetched.size() < Constants.LEVEL_PREFETCH_DEPTH) {
+            long seed = this.seeds.nextLong();
+            this.prefetched.addLast(this.executor.submit(() -> createLevel(seed)));
+        }
+    }
+
+    private GameMap createLevel(long seed) {
+        return new GameMap(Constants.ROOM_SIZE, Constants.ROOM_SIZE, Constants.MAP_GRID_SIZE, Constants.MAP_ROOM_COUNT,
+                seed, Runtime.getRuntime().availableProcessors());
+    }
+
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
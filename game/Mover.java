@@ -1,70 +1,229 @@
 package game;
 
-import game.object.Pathfinder;
+import game.object.Dungeon;
+import game.object.RoomGraph;
+import game.object.Waypoint;
 import game.object.entity.DynamicEntity;
 import game.object.entity.EntityType;
 import game.ui.Message;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+// Walks are driven by one animation clock that only runs while something walks. Each tick starts the next step once
+// the previous one has been drawn all the way, and repaints just the tiles the sliding sprite crosses. Clicks that
+// arrive mid-walk are queued and run when it ends. Only the newest key move waits, replacing any earlier one, so a held
+// key walks on step by step but stops at most one step after it is released instead of replaying the key repeats.
 public class Mover {
+    private static final Logger LOGGER = Logger.getLogger(Mover.class.getName());
+    private static final long STEP_NANOS = Constants.GAME_AUTO_MOVEMENT_DELAY * 1_000_000L;
+
     private final Game game;
+    private final Timer clock;
+    private final Deque<Runnable> queuedInput = new ArrayDeque<>();
+    private Runnable queuedMove; // The key move in queuedInput, if any
+    private Walk walk;
+    private Rectangle lastBounds; // Where the walking sprite was last repainted, so the tiles it leaves get redrawn
 
     public Mover(Game game) {
         this.game = game;
+        this.clock = new Timer(1000 / Constants.GAME_ANIMATION_RATE, _ -> this.game.runOnGameThread(this::tick));
     }
 
     public void moveBy(DynamicEntity actor, int dx, int dy) {
+        if (dx == 0 && dy == 0) return;
+        if (this.walk != null) {
+            this.queuedInput.remove(this.queuedMove);
+            this.queuedMove = () -> moveBy(actor, dx, dy);
+            queueWhileWalking(this.queuedMove);
+            return;
+        }
+
         int newX = actor.getX() + dx;
         int newY = actor.getY() + dy;
+        Dungeon dungeon = this.game.getGameState().getCurrentDungeon();
 
-        if (newX >= 0 && newX < Constants.GAME_TILE_NUM && newY >= 0 && newY < Constants.GAME_TILE_NUM &&
+        if (newX >= 0 && newX < dungeon.getWidth() && newY >= 0 && newY < dungeon.getHeight() &&
                 (this.game.getGameState().getCurrentDungeon().getTile(newX, newY).type() == EntityType.FLOOR ||
                         this.game.getGameState().getCurrentDungeon().getTile(newX, newY).type() == EntityType.EXIT ||
                         this.game.getGameState().getCurrentDungeon().getTile(newX, newY).type() == EntityType.DOOR)) {
-            actor.move(dx, dy);
+            int width = dungeon.getWidth();
+            animateAutoMovement(actor, new int[]{actor.getY() * width + actor.getX(), newY * width + newX}, width, null); // A walk of one step
         }
     }
 
     public void moveTo(DynamicEntity actor, int targetX, int targetY) {
+        if (queueWhileWalking(() -> moveTo(actor, targetX, targetY))) return;
+
+        Dungeon current = this.game.getGameState().getCurrentDungeon();
+        if (targetX >= current.getWidth() || targetY >= current.getHeight()) return; // Clicked past a room smaller than the window
+
         if (this.game.getGameState().getCurrentDungeon().getTile(targetX, targetY).type() != EntityType.FLOOR) { // Cannot move to non-floor tiles
             this.game.getGameState().setMessage(new Message("It ain't that easy", this.game));
             this.game.getGameState().getMessage().display(750);
             return;
         }
 
-        Pathfinder pathfinder = new Pathfinder(this.game.getGameState().getCurrentDungeon());
-        java.util.List<Point> path = pathfinder.findPath(actor.getX(), actor.getY(), targetX, targetY);
+        // Search in the background; a newer click cancels this search, and the walk starts back on the event thread
+        Dungeon dungeon = this.game.getGameState().getCurrentDungeon();
+        int startX = actor.getX();
+        int startY = actor.getY();
+        this.game.getPathService().findPath(dungeon, startX, startY, targetX, targetY).whenCompleteAsync((path, error) -> {
+            if (error != null) {
+                if (!(error.getCause() instanceof CancellationException)) LOGGER.log(Level.SEVERE, "An exception occurred", error);
+                return;
+            }
+
+            // Drop results that no longer apply: no path, another walk started, or the actor moved meanwhile
+            if (path == null || this.game.getGameState().isMovementInProgress() || this.game.getGameState().getCurrentDungeon() != dungeon ||
+                    actor.getX() != startX || actor.getY() != startY) {
+                return;
+            }
+            animateAutoMovement(actor, path, dungeon.getWidth(), null);
+        }, this.game::runOnGameThread);
+    }
+
+    // Walk to Ciri, possibly through many rooms; the route is planned in the background like a clicked path
+    public void moveToExit(DynamicEntity actor) {
+        if (queueWhileWalking(() -> moveToExit(actor))) return;
+
+        Dungeon dungeon = this.game.getGameState().getCurrentDungeon();
+        int startX = actor.getX();
+        int startY = actor.getY();
+        RoomGraph graph = this.game.getMap().getRoomGraph();
+        RoomGraph.RouteRequest request = graph.prepareRouteToExit(dungeon, startX, startY);
+        this.game.getPathService().findRoute(graph, request).whenCompleteAsync((route, error) -> {
+            if (error != null) {
+                if (!(error.getCause() instanceof CancellationException)) LOGGER.log(Level.SEVERE, "An exception occurred", error);
+                return;
+            }
+            request.keepDoorDistances();
+
+            // Drop results that no longer apply: another walk started, or the actor moved meanwhile
+            if (this.game.getGameState().isMovementInProgress() || this.game.getGameState().getCurrentDungeon() != dungeon ||
+                    actor.getX() != startX || actor.getY() != startY) {
+                return;
+            }
+            if (route == null) {
+                this.game.getGameState().setMessage(new Message("Ciri can't be reached", this.game));
+                this.game.getGameState().getMessage().display(750);
+                return;
+            }
+            followRoute(actor, route, 0);
+        }, this.game::runOnGameThread);
+    }
+
+    // Only the leg in the room being walked is turned into a tile path; the next leg is planned on arrival
+    private void followRoute(DynamicEntity actor, List<Waypoint> route, int leg) {
+        if (leg == route.size()) return;
+
+        Waypoint waypoint = route.get(leg);
+        Dungeon dungeon = this.game.getGameState().getCurrentDungeon();
+        if (dungeon.getGridX() != waypoint.roomX() || dungeon.getGridY() != waypoint.roomY()) return; // The actor left the planned route
+
+        // Waypoints are doors or the exit, whose distance fields are already cached from planning the route
+        int[] path = dungeon.getDistanceField(waypoint.x(), waypoint.y()).pathFrom(actor.getX(), actor.getY());
         if (path == null) return;
-        animateAutoMovement(actor, path);
+        animateAutoMovement(actor, path, dungeon.getWidth(), () -> followRoute(actor, route, leg + 1));
     }
 
-    private void animateAutoMovement(DynamicEntity actor, List<Point> path) {
-        Timer timer = new Timer(Constants.GAME_AUTO_MOVEMENT_DELAY, null);
-        this.game.getGameState().setMovementInProgress(true);
+    // Stop any automatic movement, e.g. when the level changes under it
+    public void stop() {
+        this.game.getPathService().cancel();
+        this.clock.stop();
+        this.walk = null;
+        this.lastBounds = null;
+        this.queuedInput.clear();
+        this.queuedMove = null;
+        this.game.getGameState().setMovementInProgress(false);
+    }
 
-        timer.addActionListener(new ActionListener() {
-            int index = 1; // Start at 1 to skip the player's current position
+    // Input that arrives mid-walk runs once the walk ends
+    private boolean queueWhileWalking(Runnable input) {
+        if (this.walk == null) return false;
+        if (this.queuedInput.size() < Constants.GAME_INPUT_QUEUE_SIZE) this.queuedInput.add(input);
+        return true;
+    }
 
-            @Override
-            public void actionPerformed(ActionEvent event) {
-                if (index < path.size()) {
-                    Point position = path.get(index);
+    // The path holds tile indices, y * width + x; onFinish runs after the last step, if given
+    private void animateAutoMovement(DynamicEntity actor, int[] path, int width, Runnable onFinish) {
+        this.walk = new Walk(actor, this.game.getGameState().getCurrentDungeon(), path, width, onFinish);
+        this.lastBounds = null;
+        this.game.getGameState().setMovementInProgress(true);
+        if (!this.clock.isRunning()) this.clock.start();
+        tick(); // The first step starts right away
+    }
 
-                    actor.move(position.x - actor.getX(), position.y - actor.getY());
+    private void tick() {
+        Walk walk = this.walk;
+        if (walk == null) { // Stopped while this tick was queued
+            this.clock.stop();
+            return;
+        }
 
-                    index++;
-                } else {
-                    timer.stop();
-                    Mover.this.game.getGameState().setMovementInProgress(false);
-                }
+        DynamicEntity actor = walk.actor;
+        long now = System.nanoTime();
+        if (actor.stepProgress(now) >= 1) { // The previous step has been drawn all the way
+            if (walk.index == walk.path.length || this.game.getGameState().getCurrentDungeon() != walk.dungeon) {
+                repaintActor(actor, now);
+                finish(walk);
+                return;
             }
 
-        });
-        timer.start();
+            int x = walk.path[walk.index] % walk.width;
+            int y = walk.path[walk.index] / walk.width;
+            walk.index++;
+            actor.move(x - actor.getX(), y - actor.getY());
+            if (this.walk != walk) return; // Reaching the exit started the next level
+            actor.animateStep(now, STEP_NANOS);
+        }
+        repaintActor(actor, now);
+    }
+
+    private void finish(Walk walk) {
+        this.walk = null;
+        this.clock.stop();
+        this.lastBounds = null;
+        this.game.getGameState().setMovementInProgress(false);
+        if (walk.onFinish != null) walk.onFinish.run();
+
+        // Queued input that can't move, e.g. into a wall, doesn't hold up the rest
+        while (this.walk == null && !this.queuedInput.isEmpty()) {
+            this.queuedInput.poll().run();
+        }
+    }
+
+    // Repaint the tiles the sprite covered last time and covers now; the game loop redraws every frame anyway
+    private void repaintActor(DynamicEntity actor, long now) {
+        if (this.game.getGameLoop() != null) return;
+
+        Rectangle bounds = this.game.getRenderer().getSpriteBounds(actor, now);
+        Rectangle damage = this.lastBounds == null ? bounds : bounds.union(this.lastBounds);
+        this.lastBounds = bounds;
+        this.game.repaint(damage.x, damage.y, damage.width, damage.height);
+    }
+
+    // A path being walked, one animated step per tile
+    private static class Walk {
+        private final DynamicEntity actor;
+        private final Dungeon dungeon;
+        private final int[] path;
+        private final int width;
+        private final Runnable onFinish;
+        private int index = 1; // Start at 1 to skip the actor's current position
+
+        private Walk(DynamicEntity actor, Dungeon dungeon, int[] path, int width, Runnable onFinish) {
+            this.actor = actor;
+            this.dungeon = dungeon;
+            this.path = path;
+            this.width = width;
+            this.onFinish = onFinish;
+        }
     }
 }
@@ -0,0 +1,70 @@
+package game;
+
+import game.object.Dungeon;
+import game.object.Pathfinder;
+import game.object.RoomGraph;
+import game.object.Waypoint;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs path and route searches off the game thread. Only the newest request matters: submitting another one cancels
+// the search in flight, which notices at its next checkpoint and gives up.
+//
+// Threading: findPath and findRoute must be called on the game thread, the only thread that changes rooms. The rooms
+// are copied there, and the worker searches those copies, never a live Dungeon, so digging, moving occupants and
+// distance field repair can go on during a search. A search sees the rooms as they were when it was requested; the
+// caller checks that the result still applies when it comes back. The worker's Pathfinder and the search state of a
+// RoomGraph are only ever touched by the worker.
+public class PathService {
+    // One worker, since the Pathfinder and the RoomGraph reuse their search arrays and must not run two searches at once
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("pathfinder").daemon().factory());
+    private final AtomicInteger latestRequest = new AtomicInteger();
+    private Pathfinder pathfinder; // Worker thread only; replaced when a room of another size comes along
+
+    // Completes with the tile indices from start to goal, or null if the goal can't be reached within the node
+    // budget; completes exceptionally with a CancellationException if a newer request superseded this one
+    public CompletableFuture<int[]> findPath(Dungeon dungeon, int startX, int startY, int goalX, int goalY) {
+        int request = this.latestRequest.incrementAndGet();
+        byte[] tiles = dungeon.snapshotTiles();
+        int width = dungeon.getWidth();
+        int height = dungeon.getHeight();
+
+        return CompletableFuture.supplyAsync(() -> {
+            if (request != this.latestRequest.get()) throw new CancellationException();
+
+            if (this.pathfinder == null || !this.pathfinder.isSized(width, height)) this.pathfinder = new Pathfinder(width, height);
+            int[] path = this.pathfinder.findPath(tiles, startX, startY, goalX, goalY, Constants.PATHFINDER_NODE_BUDGET,
+                    () -> request != this.latestRequest.get());
+            if (request != this.latestRequest.get()) throw new CancellationException();
+            return path;
+        }, this.executor);
+    }
+
+    // Completes with the waypoints of a route prepared by the graph, or null if there is none; completes exceptionally
+    // with a CancellationException if a newer request superseded this one
+    public CompletableFuture<List<Waypoint>> findRoute(RoomGraph graph, RoomGraph.RouteRequest route) {
+        int request = this.latestRequest.incrementAndGet();
+
+        return CompletableFuture.supplyAsync(() -> {
+            if (request != this.latestRequest.get()) throw new CancellationException();
+
+            List<Waypoint> waypoints = graph.findRoute(route, () -> request != this.latestRequest.get());
+            if (request != this.latestRequest.get()) throw new CancellationException();
+            return waypoints;
+        }, this.executor);
+    }
+
+    // Cancel whatever search is in flight
+    public void cancel() {
+        this.latestRequest.incrementAndGet();
+    }
+
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
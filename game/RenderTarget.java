@@ -0,0 +1,22 @@
+package game;
+
+import java.awt.*;
+
+// Where the Renderer draws a frame: the window's BufferStrategy, or an off-screen image
+public interface RenderTarget {
+    // Graphics for the next frame
+    Graphics2D beginFrame();
+
+    // Finish and show the frame; false if its contents were lost and it has to be drawn again
+    boolean endFrame(Graphics2D g);
+
+    // Whether a new frame starts out with the previous one, so that only a changed region needs drawing
+    boolean preservesContents();
+
+    // Null when there is no screen, e.g. when running headless
+    GraphicsConfiguration getConfiguration();
+
+    int getWidth();
+
+    int getHeight();
+}
@@ -1,49 +1,208 @@
 package game;
 
+import game.object.Dungeon;
 import game.object.entity.*;
+import game.ui.Message;
+import game.ui.Minimap;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 
+// Each Dungeon keeps a pre-rendered image of its tiles without occupants. A frame copies the part the camera sees in
+// one call and draws the visible occupants and the message on top. The layer lives with its room, so walking back
+// into a room reuses it. Tiles that changed since the last frame are patched in place, and the layer is redrawn
+// completely only when it is new or its video memory was lost. Rooms too big for one image are drawn tile by tile,
+// but only the tiles in view. Everything drawn comes from the GameState, so a frame can be rendered into any
+// RenderTarget, including an off-screen image without a window. Moving entities are drawn between tiles, and the camera
+// follows the player's drawn position, so a scrolling view slides along with the step; while only the sprites change,
+// a frame redraws just the damaged part of the window over the previous frame.
 public class Renderer {
-    private final Game game;
+    private final GameState state;
+    private final Camera camera;
+    private final int tileSize;
+    private final Torch torch;
+    private Dungeon lastDungeon; // What the previous frame showed, to tell whether a damaged region is enough
+    private int lastCameraX;
+    private int lastCameraY;
+    private int lastPlayerX;
+    private int lastPlayerY;
 
-    public Renderer(Game game) {
-        this.game = game;
+    public Renderer(GameState state, Camera camera, int tileSize) {
+        this.state = state;
+        this.camera = camera;
+        this.tileSize = tileSize;
+        this.torch = new Torch(tileSize);
     }
 
-    public void render(Graphics g) {
-        renderTiles(g);
-        if (this.game.getGameState().getMessage().getText() != null) renderMessage(g);
+    // Draw a frame, again if the target lost it
+    public void render(RenderTarget target) {
+        render(target, null);
     }
 
-    private void renderTiles(Graphics g) {
-        for (int y = 0; y < Constants.GAME_TILE_NUM; y++) {
-            for (int x = 0; x < Constants.GAME_TILE_NUM; x++) {
-                Entity tile = this.game.getGameState().getCurrentDungeon().getTile(x, y);
-                Image imageToDraw = ImageCache.getImage(tile.imagePath());
-                if (imageToDraw != null) {
-                    g.drawImage(imageToDraw, x * Constants.GAME_TILE_SIZE, y * Constants.GAME_TILE_SIZE, Constants.GAME_TILE_SIZE, Constants.GAME_TILE_SIZE, game);
+    // Redraw only the damaged region, in window pixels, if the rest of the previous frame is still valid; a null
+    // region redraws everything
+    public void render(RenderTarget target, Rectangle damage) {
+        Dungeon dungeon = this.state.getCurrentDungeon();
+        DynamicEntity player = this.state.getPlayer();
+        long now = System.nanoTime();
+        float progress = player.stepProgress(now);
+        this.camera.follow(dungeon, player.getPreviousX() + (player.getX() - player.getPreviousX()) * progress,
+                player.getPreviousY() + (player.getY() - player.getPreviousY()) * progress);
+
+        // Scrolling, a new room or a player on a new tile changes more than the moving sprite: the torch, the
+        // minimap and the whole view
+        boolean partial = damage != null && target.preservesContents() && !this.state.isTorchMode() && dungeon == this.lastDungeon &&
+                this.camera.getPixelX() == this.lastCameraX && this.camera.getPixelY() == this.lastCameraY &&
+                player.getX() == this.lastPlayerX && player.getY() == this.lastPlayerY;
+        this.lastDungeon = dungeon;
+        this.lastCameraX = this.camera.getPixelX();
+        this.lastCameraY = this.camera.getPixelY();
+        this.lastPlayerX = player.getX();
+        this.lastPlayerY = player.getY();
+
+        do {
+            Graphics2D g = target.beginFrame();
+            if (partial) g.clip(damage);
+            render(g, target, dungeon, player, now);
+            if (target.endFrame(g)) return;
+            partial = false; // A lost frame is drawn completely
+        } while (true);
+    }
+
+    private void render(Graphics g, RenderTarget target, Dungeon dungeon, DynamicEntity player, long now) {
+        SpriteAtlas atlas = ImageCache.getAtlas(this.tileSize);
+        Camera camera = this.camera;
+
+        int size = this.tileSize;
+        if (dungeon.getWidth() < camera.getViewWidth() || dungeon.getHeight() < camera.getViewHeight()) { // The room doesn't fill the window
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, camera.getViewWidth() * size, camera.getViewHeight() * size);
+        }
+
+        // Mid-scroll, the tiles at the far edges are partly in view, so one more column and row are drawn
+        int left = camera.getX();
+        int top = camera.getY();
+        int offsetX = camera.getOffsetX();
+        int offsetY = camera.getOffsetY();
+        int columns = Math.min(camera.getViewWidth() + (offsetX > 0 ? 1 : 0), dungeon.getWidth() - left);
+        int rows = Math.min(camera.getViewHeight() + (offsetY > 0 ? 1 : 0), dungeon.getHeight() - top);
+
+        Image layer = prepareStaticLayer(dungeon, atlas, target.getConfiguration());
+        if (layer != null) {
+            int width = Math.min(camera.getViewWidth() * size, dungeon.getWidth() * size - camera.getPixelX());
+            int height = Math.min(camera.getViewHeight() * size, dungeon.getHeight() * size - camera.getPixelY());
+            g.drawImage(layer, 0, 0, width, height, camera.getPixelX(), camera.getPixelY(), camera.getPixelX() + width, camera.getPixelY() + height, null);
+        } else {
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < columns; x++) {
+                    atlas.draw(g, ImageCache.spriteIndex(dungeon.getBaseTileType(left + x, top + y)), x * size - offsetX, y * size - offsetY);
+                }
+            }
+        }
+        renderOccupants(g, dungeon, atlas, left, top, columns, rows, now);
+        if (this.state.isTorchMode()) {
+            this.torch.render(g, dungeon, player.getX(), player.getY(), camera);
+        }
+
+        Minimap minimap = this.state.getMinimap();
+        if (minimap != null) {
+            minimap.visit(dungeon); // Cheap after the first frame in a room
+            if (this.state.isMinimapShown()) minimap.render(g, dungeon, player.getX(), player.getY(), camera.getViewWidth() * size - 10, 10);
+        }
+
+        Message message = this.state.getMessage();
+        if (message != null && message.getText() != null) renderMessage(g, message.getText(), target);
+    }
+
+    // Null when the room is too big for one image
+    private Image prepareStaticLayer(Dungeon dungeon, SpriteAtlas atlas, GraphicsConfiguration configuration) {
+        int width = dungeon.getWidth() * this.tileSize;
+        int height = dungeon.getHeight() * this.tileSize;
+        if (width > Constants.MAX_STATIC_LAYER_SIZE || height > Constants.MAX_STATIC_LAYER_SIZE) {
+            dungeon.clearDirtyTiles(); // Every frame redraws the visible tiles anyway
+            return null;
+        }
+
+        Image layer = dungeon.getStaticLayer();
+        boolean redrawAll = false;
+
+        if (layer instanceof VolatileImage volatileLayer && configuration != null) {
+            int status = volatileLayer.validate(configuration);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) { // E.g. the window moved to another screen
+                layer = null;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                redrawAll = true;
+            }
+        }
+        if (layer == null) {
+            layer = createLayer(configuration, width, height);
+            dungeon.setStaticLayer(layer);
+            redrawAll = true;
+        }
+
+        Graphics g = layer.getGraphics();
+        if (redrawAll) {
+            for (int y = 0; y < dungeon.getHeight(); y++) {
+                for (int x = 0; x < dungeon.getWidth(); x++) {
+                    renderStaticTile(g, atlas, dungeon, x, y);
                 }
             }
+        } else {
+            for (int index = dungeon.nextDirtyTile(0); index >= 0; index = dungeon.nextDirtyTile(index + 1)) {
+                renderStaticTile(g, atlas, dungeon, index % dungeon.getWidth(), index / dungeon.getWidth());
+            }
         }
+        dungeon.clearDirtyTiles(); // If the contents get lost after this, the next validate() reports a restore
+        g.dispose();
+        return layer;
+    }
+
+    // Video memory when there is a screen, with a plain image as the fallback, e.g. when running headless
+    private Image createLayer(GraphicsConfiguration configuration, int width, int height) {
+        if (configuration != null) return configuration.createCompatibleVolatileImage(width, height);
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private void renderStaticTile(Graphics g, SpriteAtlas atlas, Dungeon dungeon, int x, int y) {
+        atlas.draw(g, ImageCache.spriteIndex(dungeon.getBaseTileType(x, y)), x * this.tileSize, y * this.tileSize);
+    }
+
+    private void renderOccupants(Graphics g, Dungeon dungeon, SpriteAtlas atlas, int left, int top, int columns, int rows, long now) {
+        for (DynamicEntity occupant : dungeon.getOccupants()) {
+            int x = occupant.getX() - left;
+            int y = occupant.getY() - top;
+            if (x < -1 || x > columns || y < -1 || y > rows) continue; // Out of view, even while stepping in from the edge
+            Rectangle bounds = getSpriteBounds(occupant, now);
+            atlas.draw(g, occupant.spriteIndex(), bounds.x, bounds.y);
+        }
+    }
+
+    // Window pixels the entity covers at the given time, between its previous and current tile while it steps
+    public Rectangle getSpriteBounds(DynamicEntity entity, long now) {
+        float progress = entity.stepProgress(now);
+        float x = entity.getPreviousX() + (entity.getX() - entity.getPreviousX()) * progress;
+        float y = entity.getPreviousY() + (entity.getY() - entity.getPreviousY()) * progress;
+        return new Rectangle(Math.round(x * this.tileSize) - this.camera.getPixelX(), Math.round(y * this.tileSize) - this.camera.getPixelY(),
+                this.tileSize, this.tileSize);
     }
 
-    private void renderMessage(Graphics g) {
+    private void renderMessage(Graphics g, String text, RenderTarget target) {
         g.setColor(Constants.MESSAGE_COLOR);
         g.setFont(Constants.MESSAGE_FONT);
         FontMetrics fm = g.getFontMetrics();
-        int messageWidth = fm.stringWidth(this.game.getGameState().getMessage().getText());
+        int messageWidth = fm.stringWidth(text);
         int messageHeight = fm.getHeight();
-        int x = (this.game.getWidth() - messageWidth) / 2;
-        int y = (this.game.getHeight() - messageHeight) / 2 + fm.getAscent();
-        g.drawString(this.game.getGameState().getMessage().getText(), x, y);
+        int x = (target.getWidth() - messageWidth) / 2;
+        int y = (target.getHeight() - messageHeight) / 2 + fm.getAscent();
+        g.drawString(text, x, y);
     }
 
     public void replacePreviousTile(DynamicEntity actor) {
-        if (this.game.getGameState().getCurrentDungeon().isDoor(actor.getX(), actor.getY())) {
-            this.game.getGameState().getCurrentDungeon().setTile(actor.getX(), actor.getY(), new StaticEntity(EntityType.DOOR)); // If the tile is a door, redraw the door
+        if (this.state.getCurrentDungeon().isDoor(actor.getX(), actor.getY())) {
+            this.state.getCurrentDungeon().setTile(actor.getX(), actor.getY(), StaticEntity.of(EntityType.DOOR)); // If the tile is a door, redraw the door
         } else {
-            this.game.getGameState().getCurrentDungeon().setTile(actor.getX(), actor.getY(), new StaticEntity(EntityType.FLOOR)); // Otherwise, redraw the floor
+            this.state.getCurrentDungeon().setTile(actor.getX(), actor.getY(), StaticEntity.of(EntityType.FLOOR)); // Otherwise, redraw the floor
         }
     }
 }
@@ -0,0 +1,67 @@
+package game;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// Every sprite scaled once to one tile size and packed side by side into a single display-compatible image, so
+// drawing a tile is an unscaled copy out of an image the Java2D pipeline can keep in video memory
+public class SpriteAtlas {
+    private final BufferedImage atlas;
+    private final boolean[] present; // Sprites without a source image leave their slot empty
+    private final int tileSize;
+
+    SpriteAtlas(Image[] sources, int tileSize) {
+        this.tileSize = tileSize;
+        this.atlas = createCompatibleImage(sources.length * tileSize, tileSize);
+        this.present = new boolean[sources.length];
+
+        Graphics2D g = this.atlas.createGraphics();
+        for (int sprite = 0; sprite < sources.length; sprite++) {
+            if (sources[sprite] == null) continue;
+            g.drawImage(scale(sources[sprite], tileSize), sprite * tileSize, 0, null);
+            this.present[sprite] = true;
+        }
+        g.dispose();
+    }
+
+    public void draw(Graphics g, int sprite, int x, int y) {
+        if (!this.present[sprite]) return;
+        int sourceX = sprite * this.tileSize;
+        g.drawImage(this.atlas, x, y, x + this.tileSize, y + this.tileSize, sourceX, 0, sourceX + this.tileSize, this.tileSize, null);
+    }
+
+    // A view into the atlas, e.g. for icons; shares the atlas pixels
+    public BufferedImage getSprite(int sprite) {
+        return this.atlas.getSubimage(sprite * this.tileSize, 0, this.tileSize, this.tileSize);
+    }
+
+    public int getTileSize() {
+        return this.tileSize;
+    }
+
+    // Halve with bilinear filtering until close to the target size, which looks as smooth as SCALE_SMOOTH
+    private static Image scale(Image source, int size) {
+        Image current = source;
+        int width = source.getWidth(null);
+        int height = source.getHeight(null);
+
+        do {
+            width = Math.max(size, width / 2);
+            height = Math.max(size, height / 2);
+            BufferedImage step = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = step.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(current, 0, 0, width, height, null);
+            g.dispose();
+            current = step;
+        } while (width > size || height > size);
+
+        return current;
+    }
+
+    private static BufferedImage createCompatibleImage(int width, int height) {
+        if (GraphicsEnvironment.isHeadless()) return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+        return configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+}
@@ -0,0 +1,96 @@
+package game;
+
+import game.object.Dungeon;
+import game.object.FieldOfView;
+
+import java.awt.*;
+
+// Darkness around the player in torch mode. Each frame fills the view with rectangles: one opaque black run per row
+// for the stretches of tiles out of sight, and a translucent tile for each lit tile, darker towards the edge of the
+// light. Opaque fills are cheap and only the few lit tiles are blended, so the cost doesn't grow with the window's
+// pixels the way blending a full-view mask does. The per-tile darkness is only recomputed when the field of view or
+// the camera changes.
+public class Torch {
+    private static final Color[] SHADES = new Color[256]; // Black at every alpha, so frames don't allocate colors
+
+    static {
+        for (int alpha = 0; alpha < SHADES.length; alpha++) {
+            SHADES[alpha] = new Color(0, 0, 0, alpha);
+        }
+    }
+
+    private final int tileSize;
+    private FieldOfView fieldOfView;
+    private int[] shades; // Alpha per tile of the view, row by row
+    private int shadesVersion = -1;
+    private int shadesLeft = -1, shadesTop = -1;
+
+    public Torch(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    public void render(Graphics g, Dungeon dungeon, int playerX, int playerY, Camera camera) {
+        if (this.fieldOfView == null || !this.fieldOfView.isSized(dungeon.getWidth(), dungeon.getHeight())) {
+            this.fieldOfView = new FieldOfView(dungeon.getWidth(), dungeon.getHeight(), Constants.TORCH_RADIUS);
+            this.shadesVersion = -1;
+        }
+        this.fieldOfView.update(dungeon, playerX, playerY);
+
+        // One more column and row than the view, for the tiles that are partly in view while the camera scrolls
+        int columns = camera.getViewWidth() + 1;
+        int rows = camera.getViewHeight() + 1;
+        if (this.shades == null) {
+            this.shades = new int[columns * rows];
+        }
+        if (this.fieldOfView.getVersion() != this.shadesVersion || camera.getX() != this.shadesLeft || camera.getY() != this.shadesTop) {
+            rebuildShades(dungeon, playerX, playerY, camera);
+        }
+
+        int size = this.tileSize;
+        int offsetX = camera.getOffsetX();
+        int offsetY = camera.getOffsetY();
+        for (int y = 0; y < rows; y++) {
+            int row = y * columns;
+            int top = y * size - offsetY;
+            int x = 0;
+            while (x < columns) {
+                int alpha = this.shades[row + x];
+                if (alpha == 255) { // Merge the run of dark tiles into one fill
+                    int end = x + 1;
+                    while (end < columns && this.shades[row + end] == 255) end++;
+                    g.setColor(Color.BLACK);
+                    g.fillRect(x * size - offsetX, top, (end - x) * size, size);
+                    x = end;
+                } else {
+                    if (alpha > 0) {
+                        g.setColor(SHADES[alpha]);
+                        g.fillRect(x * size - offsetX, top, size, size);
+                    }
+                    x++;
+                }
+            }
+        }
+    }
+
+    // Visible tiles get darker towards the edge of the light, everything else is black
+    private void rebuildShades(Dungeon dungeon, int playerX, int playerY, Camera camera) {
+        int radius = this.fieldOfView.getRadius();
+        int columns = camera.getViewWidth() + 1;
+        for (int y = 0; y < camera.getViewHeight() + 1; y++) {
+            for (int x = 0; x < columns; x++) {
+                int tileX = camera.getX() + x;
+                int tileY = camera.getY() + y;
+                int alpha = 255;
+                if (tileX < dungeon.getWidth() && tileY < dungeon.getHeight() && this.fieldOfView.isVisible(tileX, tileY)) {
+                    int dx = tileX - playerX;
+                    int dy = tileY - playerY;
+                    alpha = Math.min(255, Constants.TORCH_EDGE_ALPHA * (dx * dx + dy * dy) / (radius * radius));
+                }
+                this.shades[y * columns + x] = alpha;
+            }
+        }
+        this.shadesVersion = this.fieldOfView.getVersion();
+        this.shadesLeft = camera.getX();
+        this.shadesTop = camera.getY();
+    }
+}
@@ -0,0 +1,172 @@
+package game.bench;
+
+import game.*;
+import game.object.Dungeon;
+import game.object.GameMap;
+import game.object.entity.EntityType;
+import game.object.entity.Player;
+import game.object.entity.PlayerCharacter;
+import game.ui.Message;
+import game.ui.Minimap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// Renders frames into an off-screen image without a window and reports frame time percentiles for combinations of
+// room size, sprite size and overlay. The player takes a random step before every frame, so each frame also patches a
+// couple of tiles of the static layer like it does in the game.
+//
+// Each scenario is measured in a few rounds and the round with the lowest median is reported, since a single run on a
+// busy machine can easily be twice as slow. It doubles as a regression check and exits with status 1 if any scenario
+// fails:
+// - Budget: the median frame must fit in one frame of GAME_FRAME_RATE.
+// - Baseline: with --baseline <file>, the median may not exceed the recorded one by more than the tolerance (default
+//   1.5x, plus 50us of slack for noise in very short frames). Record a baseline on the machine that checks it with
+//   --record <file>; numbers from other machines don't compare.
+//
+// Run with: java game.bench.RenderBenchmark [frames] [--record <file>] [--baseline <file>] [--tolerance <factor>]
+public class RenderBenchmark {
+    private static final int[] ROOM_SIZES = {29, 100, 500};
+    private static final int[] TILE_SIZES = {15, 30, 60};
+    private static final String[] OVERLAYS = {"none", "torch", "minimap", "message"};
+    private static final int WARMUP_FRAMES = 200;
+    private static final int ROUNDS = 3;
+    private static final long SEED = 42;
+    private static final double BASELINE_SLACK_MICROS = 50;
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int frames = 1000;
+        Path record = null;
+        Path baselineFile = null;
+        double tolerance = 1.5;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--record" -> record = Path.of(args[++i]);
+                case "--baseline" -> baselineFile = Path.of(args[++i]);
+                case "--tolerance" -> tolerance = Double.parseDouble(args[++i]);
+                default -> frames = Integer.parseInt(args[i]);
+            }
+        }
+        Map<String, Double> baseline = baselineFile == null ? Map.of() : readBaseline(baselineFile);
+        double budgetMicros = 1_000_000.0 / Constants.GAME_FRAME_RATE;
+        new ImageCache().cacheImages();
+
+        List<String> results = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        System.out.printf("%-6s %-6s %-8s %10s %10s %10s%n", "room", "tile", "overlay", "p50 (us)", "p90 (us)", "p99 (us)");
+        for (int roomSize : ROOM_SIZES) {
+            for (int tileSize : TILE_SIZES) {
+                for (String overlay : OVERLAYS) {
+                    long[] times = null;
+                    for (int round = 0; round < ROUNDS; round++) {
+                        long[] roundTimes = run(roomSize, tileSize, overlay, frames);
+                        Arrays.sort(roundTimes);
+                        if (times == null || percentile(roundTimes, 0.50) < percentile(times, 0.50)) times = roundTimes;
+                    }
+                    double p50 = percentile(times, 0.50);
+                    String scenario = roomSize + " " + tileSize + " " + overlay;
+                    String line = String.format(Locale.ROOT, "%-6d %-6d %-8s %10.1f %10.1f %10.1f", roomSize, tileSize, overlay,
+                            p50, percentile(times, 0.90), percentile(times, 0.99));
+                    System.out.println(line);
+                    results.add(line);
+
+                    if (p50 > budgetMicros) {
+                        failures.add(String.format(Locale.ROOT, "%s: p50 %.1fus is over the %.1fus frame budget", scenario, p50, budgetMicros));
+                    }
+                    Double recorded = baseline.get(scenario);
+                    if (recorded != null && p50 > recorded * tolerance + BASELINE_SLACK_MICROS) {
+                        failures.add(String.format(Locale.ROOT, "%s: p50 %.1fus regressed from the baseline's %.1fus", scenario, p50, recorded));
+                    }
+                }
+            }
+        }
+
+        if (record != null) {
+            results.addFirst("# room tile overlay p50 p90 p99, in microseconds");
+            Files.write(record, results);
+        }
+        if (!failures.isEmpty()) {
+            failures.forEach(System.err::println);
+            System.exit(1);
+        }
+    }
+
+    // Median frame time by "room tile overlay", from a file written with --record
+    private static Map<String, Double> readBaseline(Path file) throws IOException {
+        Map<String, Double> baseline = new HashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            if (line.isBlank() || line.startsWith("#")) continue;
+            String[] fields = line.trim().split("\\s+");
+            baseline.put(fields[0] + " " + fields[1] + " " + fields[2], Double.parseDouble(fields[3]));
+        }
+        return baseline;
+    }
+
+    private static long[] run(int roomSize, int tileSize, String overlay, int frames) {
+        GameMap map = new GameMap(roomSize, roomSize, 3, 2, SEED, 1);
+        Dungeon dungeon = map.getStartingDungeon();
+        Player player = new Player(dungeon, 0, 0, PlayerCharacter.GERALT, null);
+
+        GameState state = new GameState();
+        state.setCurrentDungeon(dungeon);
+        state.setPlayer(player);
+        switch (overlay) {
+            case "torch" -> state.toggleTorchMode();
+            case "minimap" -> {
+                Minimap minimap = new Minimap(map);
+                map.setTileListener(minimap);
+                state.setMinimap(minimap);
+                state.toggleMinimap();
+            }
+            case "message" -> state.setMessage(new Message("Find Ciri to advance to next level", null));
+        }
+
+        int view = Constants.GAME_TILE_NUM;
+        Renderer renderer = new Renderer(state, new Camera(view, view, tileSize), tileSize);
+        ImageTarget target = new ImageTarget(view * tileSize, view * tileSize);
+        SplittableRandom random = new SplittableRandom(SEED);
+
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            walk(dungeon, player, random);
+            renderer.render(target);
+        }
+
+        long[] times = new long[frames];
+        for (int i = 0; i < frames; i++) {
+            walk(dungeon, player, random);
+            long start = System.nanoTime();
+            renderer.render(target);
+            times[i] = System.nanoTime() - start;
+        }
+        dungeon.setStaticLayer(null); // Release the layer before the next room
+        return times;
+    }
+
+    // One step to a random neighbouring floor tile, if there is one
+    private static void walk(Dungeon dungeon, Player player, SplittableRandom random) {
+        int direction = random.nextInt(4);
+        for (int i = 0; i < 4; i++) {
+            int dx = (direction + i) % 2 == 0 ? ((direction + i) & 2) - 1 : 0;
+            int dy = (direction + i) % 2 == 1 ? ((direction + i) & 2) - 1 : 0;
+            int x = player.getX() + dx;
+            int y = player.getY() + dy;
+            if (x < 0 || y < 0 || x >= dungeon.getWidth() || y >= dungeon.getHeight()) continue;
+            if (dungeon.getBaseTileType(x, y) != EntityType.FLOOR || dungeon.isOccupied(x, y)) continue;
+            player.step(dungeon, dx, dy);
+            return;
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1000.0;
+    }
+}
@@ -15,7 +15,7 @@ public abstract class Menu extends JFrame {
 
     // Add floor tiles to a panel
     protected void addFloorTiles(JPanel panel, int tileSize, int width, int height) {
-        ImageIcon floorIcon = createScaledIcon(new StaticEntity(EntityType.FLOOR).imagePath(), tileSize);
+        ImageIcon floorIcon = createScaledIcon(StaticEntity.of(EntityType.FLOOR).spriteIndex(), tileSize);
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
                 JLabel label = new JLabel(floorIcon);
@@ -39,8 +39,9 @@ public abstract class Menu extends JFrame {
         button.setBorder(BorderFactory.createMatteBorder(4, borderLeft, 4, borderRight, Color.BLACK));
     }
 
-    protected ImageIcon createScaledIcon(String path, int size) {
-        return new ImageIcon(ImageCache.getImage(path).getScaledInstance(size, size, Image.SCALE_SMOOTH));
+    // Scaled once per size in the sprite atlas, so menus can ask for icons as often as they like
+    protected ImageIcon createScaledIcon(int sprite, int size) {
+        return new ImageIcon(ImageCache.getAtlas(size).getSprite(sprite));
     }
 
     // Create GridBagConstraints with common settings
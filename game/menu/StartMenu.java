@@ -3,6 +3,7 @@ package game.menu;
 import game.Constants;
 import game.Game;
 import game.ImageCache;
+import game.SpriteAtlas;
 import game.object.entity.EntityType;
 import game.object.entity.PlayerCharacter;
 import game.object.entity.StaticEntity;
@@ -92,9 +93,10 @@ public class StartMenu extends Menu {
 
     // Draw the floor tiles
     private void drawSelectionPanelFloorTiles(Graphics g) {
+        SpriteAtlas atlas = ImageCache.getAtlas(Constants.START_TILE_SIZE);
         for (int y = 0; y < Constants.START_WINDOW_HEIGHT; y++) {
             for (int x = 0; x < Constants.START_WINDOW_WIDTH; x++) {
-                g.drawImage(ImageCache.getImage(new StaticEntity(EntityType.FLOOR).imagePath()), x * Constants.START_TILE_SIZE, y * Constants.START_TILE_SIZE, Constants.START_TILE_SIZE, Constants.START_TILE_SIZE, this);
+                atlas.draw(g, StaticEntity.of(EntityType.FLOOR).spriteIndex(), x * Constants.START_TILE_SIZE, y * Constants.START_TILE_SIZE);
             }
         }
     }
@@ -114,8 +116,8 @@ public class StartMenu extends Menu {
         List<PlayerCharacter> characters = Arrays.asList(PlayerCharacter.values());
 
         return switch (tile) {
-            case Tile.CHARACTER_1_IMG -> getCharacterLabel(Constants.PLAYER_IMAGE_MAP.get(characters.get(0)));
-            case Tile.CHARACTER_2_IMG -> getCharacterLabel(Constants.PLAYER_IMAGE_MAP.get(characters.get(1)));
+            case Tile.CHARACTER_1_IMG -> getCharacterLabel(characters.get(0));
+            case Tile.CHARACTER_2_IMG -> getCharacterLabel(characters.get(1));
             case Tile.CHARACTER_1_TEXT -> getSelectionButton(characters.get(0).getName(), characters.get(0), 4, 2);
             case Tile.CHARACTER_2_TEXT -> getSelectionButton(characters.get(1).getName(), characters.get(1), 2, 4);
             default -> new JLabel();
@@ -123,8 +125,8 @@ public class StartMenu extends Menu {
     }
 
     // Create a character image tile
-    private JLabel getCharacterLabel(String imagePath) {
-        ImageIcon icon = createScaledIcon(imagePath, Constants.START_TILE_SIZE);
+    private JLabel getCharacterLabel(PlayerCharacter character) {
+        ImageIcon icon = createScaledIcon(ImageCache.spriteIndex(character), Constants.START_TILE_SIZE);
         return new JLabel(icon);
     }
 
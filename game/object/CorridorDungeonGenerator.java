@@ -0,0 +1,55 @@
+package game.object;
+
+import java.util.random.RandomGenerator;
+
+// Constructive strategy: carve winding corridors from (0, 0) to the exit and every edge midpoint,
+// so a single pass always yields a connected room
+public class CorridorDungeonGenerator implements DungeonGenerator {
+    @Override
+    public GenerationReport generate(Dungeon dungeon) {
+        long start = System.nanoTime();
+
+        dungeon.generateDungeonStructure();
+        dungeon.ensureAdjacentWalls();
+        carveCorridors(dungeon);
+        dungeon.fillInaccessibleAreasWithWalls();
+        if (!dungeon.areExitsAndDoorsReachable()) { // The corridors connect everything, so this is a bug in the carve
+            throw new IllegalStateException("Carved corridors left the exit or an edge midpoint unreachable");
+        }
+
+        return new GenerationReport("corridor", 1, System.nanoTime() - start);
+    }
+
+    private void carveCorridors(Dungeon dungeon) {
+        int width = dungeon.getWidth();
+        int height = dungeon.getHeight();
+        int[] targets = {
+                dungeon.getExitX(), dungeon.getExitY(),
+                width / 2, 0, // Top
+                width - 1, height / 2, // Right
+                width / 2, height - 1, // Bottom
+                0, height / 2 // Left
+        };
+
+        for (int i = 0; i < targets.length; i += 2) {
+            carveCorridor(dungeon, targets[i], targets[i + 1]);
+        }
+    }
+
+    // Random monotone walk from (0, 0) to the target, so the corridor meanders but never backtracks
+    private void carveCorridor(Dungeon dungeon, int targetX, int targetY) {
+        RandomGenerator random = dungeon.getRandom();
+        int x = 0, y = 0;
+        dungeon.carveFloor(x, y);
+
+        while (x != targetX || y != targetY) {
+            boolean stepX = y == targetY || (x != targetX && random.nextBoolean());
+            if (stepX) {
+                x += Integer.signum(targetX - x);
+            } else {
+                y += Integer.signum(targetY - y);
+            }
+            dungeon.carveFloor(x, y);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package game.object;
+
+import game.object.entity.EntityType;
+import game.util.BucketQueue;
+
+import java.util.Arrays;
+
+// Walking distance from every tile of a room to one target tile (a Dijkstra map). Walkers only pass through floor;
+// doors, the exit and other special tiles can be stepped onto but not crossed. After a tile edit the field is
+// repaired around the edited tile instead of being recomputed.
+public class DistanceField {
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final int[] DX = {-1, 1, 0, 0}; // Left, right, up, down
+    private static final int[] DY = {0, 0, -1, 1};
+
+    private final Dungeon dungeon;
+    private final int width;
+    private final int height;
+    private final int target;
+    private final int[] distances;
+    private int version; // Bumped on every change, so derived data knows when to refresh
+    private FlowField flowField;
+
+    DistanceField(Dungeon dungeon, int targetX, int targetY) {
+        this.dungeon = dungeon;
+        this.width = dungeon.getWidth();
+        this.height = dungeon.getHeight();
+        this.target = targetY * width + targetX;
+        this.distances = new int[width * height];
+        compute();
+    }
+
+    private void compute() {
+        Arrays.fill(distances, UNREACHABLE);
+        int[] queue = new int[distances.length];
+        int head = 0, tail = 0;
+
+        distances[target] = 0;
+        queue[tail++] = target;
+        while (head < tail) {
+            int current = queue[head++];
+            if (!isRelay(current)) continue;
+
+            int x = current % width;
+            int y = current / width;
+            for (int direction = 0; direction < 4; direction++) {
+                int nx = x + DX[direction];
+                int ny = y + DY[direction];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+
+                int neighbor = ny * width + nx;
+                if (distances[neighbor] != UNREACHABLE || isWall(neighbor)) continue;
+                distances[neighbor] = distances[current] + 1;
+                queue[tail++] = neighbor;
+            }
+        }
+        version++;
+    }
+
+    // Steps from the tile to the target, or -1 if it can't be reached
+    public int getDistance(int x, int y) {
+        int distance = distances[y * width + x];
+        return distance == UNREACHABLE ? -1 : distance;
+    }
+
+    // The neighboring tile one step closer to the target, or -1 at the target or when unreachable
+    public int nextStep(int x, int y) {
+        int distance = distances[y * width + x];
+        if (distance == 0 || distance == UNREACHABLE) return -1;
+
+        for (int direction = 0; direction < 4; direction++) {
+            int nx = x + DX[direction];
+            int ny = y + DY[direction];
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+
+            int neighbor = ny * width + nx;
+            if (distances[neighbor] == distance - 1 && isRelay(neighbor)) return neighbor;
+        }
+        return -1;
+    }
+
+    // Tile indices from the given tile to the target, following the field, or null when unreachable
+    public int[] pathFrom(int x, int y) {
+        int distance = getDistance(x, y);
+        if (distance == -1) return null;
+
+        int[] path = new int[distance + 1];
+        path[0] = y * width + x;
+        for (int i = 1; i <= distance; i++) {
+            path[i] = nextStep(path[i - 1] % width, path[i - 1] / width);
+        }
+        return path;
+    }
+
+    // Next-step directions for agents walking to the target, rebuilt when this field has changed since last time
+    public FlowField getFlowField() {
+        if (flowField == null) flowField = new FlowField(this, width, height);
+        flowField.refresh();
+        return flowField;
+    }
+
+    public int getTargetX() {
+        return target % width;
+    }
+
+    public int getTargetY() {
+        return target / width;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    int[] getDistances() {
+        return distances;
+    }
+
+    // Repair the field after the tile at index changed type; returns false if the target itself became a wall
+    boolean tileChanged(int index, EntityType oldType, EntityType newType, BucketQueue queue) {
+        if (index == target) return newType != EntityType.WALL; // The target relays whatever its type
+
+        boolean wasRelay = oldType == EntityType.FLOOR;
+        boolean isRelay = newType == EntityType.FLOOR;
+        boolean wasWall = oldType == EntityType.WALL;
+        boolean isWall = newType == EntityType.WALL;
+        if (wasRelay == isRelay && wasWall == isWall) return true; // Nothing walkers care about changed
+
+        // Phase one: drop every distance that depended on the tile's old role, in order of the old distances
+        queue.clear();
+        int affectedCount = 0;
+        int[] affected = new int[16];
+        if (isWall || (wasRelay && !isRelay)) {
+            if (isWall && distances[index] != UNREACHABLE) {
+                affected[affectedCount++] = index;
+                distances[index] = UNREACHABLE;
+            }
+            if (wasRelay) {
+                for (int direction = 0; direction < 4; direction++) {
+                    int neighbor = neighborOf(index, direction);
+                    if (neighbor != -1 && distances[neighbor] != UNREACHABLE) queue.insertOrDecrease(neighbor, distances[neighbor]);
+                }
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            if (distances[current] == UNREACHABLE || isSupported(current)) continue;
+
+            if (affectedCount == affected.length) affected = Arrays.copyOf(affected, affectedCount * 2);
+            affected[affectedCount++] = current;
+            int oldDistance = distances[current];
+            distances[current] = UNREACHABLE;
+
+            if (isRelay(current)) { // Tiles that were reached through this one have to check their support too
+                for (int direction = 0; direction < 4; direction++) {
+                    int neighbor = neighborOf(current, direction);
+                    if (neighbor != -1 && distances[neighbor] == oldDistance + 1) queue.insertOrDecrease(neighbor, distances[neighbor]);
+                }
+            }
+        }
+
+        // Phase two: give the dropped tiles and the edited tile their best distance from intact neighbors, then let
+        // improvements spread outwards like in Dijkstra's algorithm
+        queue.clear();
+        for (int i = 0; i < affectedCount; i++) {
+            seed(affected[i], queue);
+        }
+        if (!isWall) {
+            seed(index, queue);
+            if (isRelay && distances[index] != UNREACHABLE) queue.insertOrDecrease(index, distances[index]); // Relay to neighbors
+        }
+
+        while (!queue.isEmpty()) {
+            int key = queue.peekKey();
+            int current = queue.poll();
+            if (key > distances[current]) continue;
+            distances[current] = key;
+            if (!isRelay(current)) continue;
+
+            for (int direction = 0; direction < 4; direction++) {
+                int neighbor = neighborOf(current, direction);
+                if (neighbor != -1 && !isWall(neighbor) && key + 1 < distances[neighbor]) {
+                    queue.insertOrDecrease(neighbor, key + 1);
+                }
+            }
+        }
+
+        version++;
+        return true;
+    }
+
+    // Queue the tile with one more than its best relaying neighbor
+    private void seed(int tile, BucketQueue queue) {
+        if (isWall(tile)) return;
+
+        int best = UNREACHABLE;
+        for (int direction = 0; direction < 4; direction++) {
+            int neighbor = neighborOf(tile, direction);
+            if (neighbor != -1 && distances[neighbor] != UNREACHABLE && isRelay(neighbor)) {
+                best = Math.min(best, distances[neighbor] + 1);
+            }
+        }
+        if (best != UNREACHABLE && best <= distances[tile]) queue.insertOrDecrease(tile, best);
+    }
+
+    // A tile keeps its distance if a relaying neighbor is exactly one step closer
+    private boolean isSupported(int tile) {
+        if (tile == target) return true;
+
+        int distance = distances[tile];
+        for (int direction = 0; direction < 4; direction++) {
+            int neighbor = neighborOf(tile, direction);
+            if (neighbor != -1 && distances[neighbor] == distance - 1 && isRelay(neighbor)) return true;
+        }
+        return false;
+    }
+
+    private int neighborOf(int tile, int direction) {
+        int nx = tile % width + DX[direction];
+        int ny = tile / width + DY[direction];
+        return nx < 0 || nx >= width || ny < 0 || ny >= height ? -1 : ny * width + nx;
+    }
+
+    // Walkers can pass through floor; the target relays too, since walks end there
+    private boolean isRelay(int tile) {
+        return tile == target || dungeon.getBaseTileType(tile % width, tile / width) == EntityType.FLOOR;
+    }
+
+    private boolean isWall(int tile) {
+        return dungeon.getBaseTileType(tile % width, tile / width) == EntityType.WALL;
+    }
+}
@@ -1,16 +1,31 @@
 package game.object;
 
+import game.Constants;
 import game.object.entity.*;
+import game.util.BucketQueue;
+import game.util.IntStack;
 
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
-import java.util.Stack;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 public class Dungeon {
-    private final Entity[][] map; // 2D array to represent the dungeon map
-    private final Random random = new Random();
+    private static final EntityType[] TYPES = EntityType.values();
+    static final int TYPE_MASK = 0x7F;
+    static final int OCCUPIED = 0x80; // Set while a dynamic entity stands on the tile
+
+    private final byte[] tiles; // Tile type ordinals, indexed by y * width + x
+    private final List<DynamicEntity> occupants = new ArrayList<>();
+    private int[] labels; // Connected component id per tile, 0 for walls; only held while the room is generated
+    private IntStack fillStack; // Reused by every flood fill during generation
+    private final RandomGenerator random;
 
     private final int width;
     private final int height;
@@ -19,19 +34,57 @@ public class Dungeon {
     private int exitX;
     private int exitY;
     private final List<Point> doorPositions = new ArrayList<>();
+    private final GenerationReport generationReport;
+    private boolean modified; // Set once a tile differs from what the generator produced
+    private int[] doorDistances; // Cached by RoomGraph, dropped whenever a tile changes type
+    private final Map<Integer, DistanceField> distanceFields = new LinkedHashMap<>(16, 0.75f, true) { // LRU by target index
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, DistanceField> eldest) {
+            return size() > Constants.DISTANCE_FIELD_CACHE_SIZE;
+        }
+    };
+    private BucketQueue repairQueue; // Shared by the distance field repairs
+    private int tileVersion; // Bumped whenever a tile changes type
+    private final BitSet dirtyTiles = new BitSet(); // Tiles changed since the renderer last drew them
+    private TileListener tileListener;
+    private Image staticLayer; // Pre-rendered tiles without occupants, built and patched by the renderer
 
     public Dungeon(int width, int height, int x, int y) {
+        this(width, height, x, y, new CorridorDungeonGenerator(), new SplittableRandom());
+    }
+
+    // The same generator and random sequence always produce the same room
+    public Dungeon(int width, int height, int x, int y, DungeonGenerator generator, RandomGenerator random) {
         this.width = width;
         this.height = height;
         this.gridX = x;
         this.gridY = y;
-        this.map = new Entity[height][width];
+        this.random = random;
+        this.tiles = new byte[width * height];
 
         int[] exit = getPossibleExitTile();
         this.exitX = exit[0];
         this.exitY = exit[1];
 
-        generateDungeon();
+        // The labels are four times the size of the tiles, so they are dropped as soon as the room is done
+        this.labels = new int[width * height];
+        this.fillStack = new IntStack();
+        this.generationReport = generator.generate(this);
+        this.labels = null;
+        this.fillStack = null;
+    }
+
+    // Restore a room from previously saved tile types
+    Dungeon(int width, int height, int x, int y, byte[] tiles, int exitX, int exitY) {
+        this.width = width;
+        this.height = height;
+        this.gridX = x;
+        this.gridY = y;
+        this.random = null; // Only generators draw from it
+        this.tiles = tiles;
+        this.exitX = exitX;
+        this.exitY = exitY;
+        this.generationReport = new GenerationReport("file", 0, 0);
     }
 
     // Select a random tile in the bottom right quadrant
@@ -41,50 +94,36 @@ public class Dungeon {
         return new int[]{x, y};
     }
 
-    private void generateDungeon() {
-        boolean allEdgeMiddlesReachable = false;
-        while (!allEdgeMiddlesReachable) { // Keep generating until the exit and all doors are reachable
-            generateDungeonStructure();
-            ensureAdjacentWalls();
-            fillInaccessibleAreasWithWalls();
-            allEdgeMiddlesReachable = areExitsAndDoorsReachable();
-        }
-    }
-
     // Generate the dungeon walls and floors
-    private void generateDungeonStructure() {
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                if (random.nextDouble() < 0.4) { // Increased chance for walls
-                    map[y][x] = new StaticEntity(EntityType.WALL); // Wall
-                } else {
-                    map[y][x] = new StaticEntity(EntityType.FLOOR); // Floor
-                }
-            }
+    void generateDungeonStructure() {
+        byte wall = (byte) EntityType.WALL.ordinal();
+        byte floor = (byte) EntityType.FLOOR.ordinal();
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = random.nextDouble() < 0.4 ? wall : floor; // Increased chance for walls
         }
     }
 
-    private void ensureAdjacentWalls() {
+    void ensureAdjacentWalls() {
         for (int y = 1; y < height - 1; y++) {
             for (int x = 1; x < width - 1; x++) {
-                if (map[y][x].type() == EntityType.WALL) { // If current tile is wall
+                if (getBaseTileType(x, y) == EntityType.WALL) { // If current tile is wall
                     // Check surrounding tiles
-                    if (map[y - 1][x].type() == EntityType.FLOOR && map[y][x - 1].type() == EntityType.FLOOR &&
-                            map[y + 1][x].type() == EntityType.FLOOR && map[y][x + 1].type() == EntityType.FLOOR) {
+                    if (getBaseTileType(x, y - 1) == EntityType.FLOOR && getBaseTileType(x - 1, y) == EntityType.FLOOR &&
+                            getBaseTileType(x, y + 1) == EntityType.FLOOR && getBaseTileType(x + 1, y) == EntityType.FLOOR) {
                         // If no adjacent walls, make one adjacent wall
                         int direction = random.nextInt(4); // 0: Up, 1: Left, 2: Down, 3: Right
                         switch (direction) {
                             case 0:
-                                setTile(x, y - 1, new StaticEntity(EntityType.WALL));
+                                setTile(x, y - 1, StaticEntity.of(EntityType.WALL));
                                 break;
                             case 1:
-                                setTile(x - 1, y, new StaticEntity(EntityType.WALL));
+                                setTile(x - 1, y, StaticEntity.of(EntityType.WALL));
                                 break;
                             case 2:
-                                setTile(x, y + 1, new StaticEntity(EntityType.WALL));
+                                setTile(x, y + 1, StaticEntity.of(EntityType.WALL));
                                 break;
                             case 3:
-                                setTile(x + 1, y, new StaticEntity(EntityType.WALL));
+                                setTile(x + 1, y, StaticEntity.of(EntityType.WALL));
                                 break;
                         }
                     }
@@ -93,39 +132,71 @@ public class Dungeon {
         }
     }
 
-    private void fillInaccessibleAreasWithWalls() {
-        // Use the flood fill algorithm starting from the player's starting position
-        boolean[][] accessible = new boolean[height][width];
-        floodFill(accessible, 0, 0); // Assuming player starts at (0, 0)
+    void fillInaccessibleAreasWithWalls() {
+        labelComponents();
+        int startLabel = labels[0]; // Assuming player starts at (0, 0)
 
-        // Fill any area that is not accessible with walls
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                if (!accessible[y][x] && map[y][x].type() != EntityType.EXIT) { // Don't fill the exit with a wall
-                    setTile(x, y, new StaticEntity(EntityType.WALL)); // Fill with a wall
-                }
+        // Fill any area that is not connected to the start with walls
+        byte wall = (byte) EntityType.WALL.ordinal();
+        byte exit = (byte) EntityType.EXIT.ordinal();
+        for (int i = 0; i < tiles.length; i++) {
+            if ((startLabel == 0 || labels[i] != startLabel) && tiles[i] != exit) { // Don't fill the exit with a wall
+                tiles[i] = wall; // Fill with a wall
             }
         }
     }
 
-    private void floodFill(boolean[][] accessible, int x, int y) {
-        if (x < 0 || x >= width || y < 0 || y >= height) {
-            return;
+    // Give every non-wall tile the id of its connected component in a single pass; walls keep label 0
+    private void labelComponents() {
+        Arrays.fill(labels, 0);
+        int nextLabel = 1;
+        for (int i = 0; i < tiles.length; i++) {
+            if (isFillable(i)) {
+                floodFill(i, nextLabel++);
+            }
         }
+    }
+
+    // Iterative scanline fill: each popped seed fills its whole horizontal run, then seeds the runs above and below
+    private void floodFill(int start, int label) {
+        fillStack.clear();
+        fillStack.push(start);
+
+        while (!fillStack.isEmpty()) {
+            int seed = fillStack.pop();
+            int y = seed / width;
+            int row = y * width;
+            if (!isFillable(seed)) continue;
+
+            // Extend the run to the left and right from the seed
+            int left = seed - row;
+            while (left > 0 && isFillable(row + left - 1)) left--;
+            int right = seed - row;
+            while (right < width - 1 && isFillable(row + right + 1)) right++;
+
+            Arrays.fill(labels, row + left, row + right + 1, label);
 
-        if (map[y][x].type() == EntityType.WALL || accessible[y][x]) {
-            return;
+            if (y > 0) pushRunSeeds(row - width, left, right); // Up
+            if (y < height - 1) pushRunSeeds(row + width, left, right); // Down
         }
+    }
 
-        accessible[y][x] = true;
+    // Push one seed for every fillable run of the given row between left and right
+    private void pushRunSeeds(int row, int left, int right) {
+        boolean inRun = false;
+        for (int x = left; x <= right; x++) {
+            boolean fillable = isFillable(row + x);
+            if (fillable && !inRun) fillStack.push(row + x);
+            inRun = fillable;
+        }
+    }
 
-        floodFill(accessible, x - 1, y); // Left
-        floodFill(accessible, x + 1, y); // Right
-        floodFill(accessible, x, y - 1); // Up
-        floodFill(accessible, x, y + 1); // Down
+    private boolean isFillable(int index) {
+        return labels[index] == 0 && (tiles[index] & TYPE_MASK) != EntityType.WALL.ordinal();
     }
 
-    private boolean areExitsAndDoorsReachable() {
+    // Relies on the labels computed by the last fillInaccessibleAreasWithWalls call, so only generators can call it
+    boolean areExitsAndDoorsReachable() {
         boolean allEdgeMiddlesReachable;
         boolean exitReachable = isTileReachable(getExitX(), getExitY());
         allEdgeMiddlesReachable = exitReachable;
@@ -142,46 +213,31 @@ public class Dungeon {
         return allEdgeMiddlesReachable;
     }
 
+    // O(1) check whether a tile shares the start tile's component
     private boolean isTileReachable(int tileX, int tileY) {
-        boolean[][] visited = new boolean[height][width];
-        Stack<int[]> stack = new Stack<>();
-        stack.push(new int[]{0, 0});
-
-        while (!stack.isEmpty()) {
-            int[] current = stack.pop();
-            int x = current[0];
-            int y = current[1];
-            visited[y][x] = true;
-            if (x == tileX && y == tileY) {
-                return true;
-            }
-            if (isValidTile(x - 1, y) && !visited[y][x - 1]) { // Left
-                stack.push(new int[]{x - 1, y});
-            }
-            if (isValidTile(x + 1, y) && !visited[y][x + 1]) { // Right
-                stack.push(new int[]{x + 1, y});
-            }
-            if (isValidTile(x, y - 1) && !visited[y - 1][x]) { // Up
-                stack.push(new int[]{x, y - 1});
-            }
-            if (isValidTile(x, y + 1) && !visited[y + 1][x]) { // Down
-                stack.push(new int[]{x, y + 1});
-            }
-        }
-        return false;
+        int label = labels[tileY * width + tileX];
+        return label != 0 && label == labels[0];
+    }
+
+    // Turn a tile into floor while the room is being generated
+    void carveFloor(int x, int y) {
+        tiles[y * width + x] = (byte) EntityType.FLOOR.ordinal();
     }
 
-    private boolean isValidTile(int x, int y) {
-        return x >= 0 && x < width && y >= 0 && y < height && map[y][x].type() != EntityType.WALL;
+    RandomGenerator getRandom() {
+        return random;
     }
 
     public void addDoor(int x, int y) {
-        setTile(x, y, new StaticEntity(EntityType.DOOR));
+        setTile(x, y, StaticEntity.of(EntityType.DOOR));
         doorPositions.add(new Point(x, y));
     }
 
     public boolean isDoor(int x, int y) {
-        return doorPositions.contains(new Point(x, y));
+        for (Point door : doorPositions) {
+            if (door.x == x && door.y == y) return true;
+        }
+        return false;
     }
 
     public int getGridX() {
@@ -193,11 +249,83 @@ public class Dungeon {
     }
 
     public Entity getTile(int x, int y) {
-        return map[y][x];
+        int tile = tiles[y * width + x];
+        if ((tile & OCCUPIED) != 0) {
+            for (DynamicEntity occupant : occupants) {
+                if (occupant.getX() == x && occupant.getY() == y) return occupant;
+            }
+        }
+        return StaticEntity.of(TYPES[tile & TYPE_MASK]);
+    }
+
+    // Type of the tile as seen by movement; an occupied tile reports the occupant's type
+    public EntityType getTileType(int x, int y) {
+        return getTile(x, y).type();
+    }
+
+    // Reads only the tile byte, so it is safe to call from a background search while the game thread moves entities
+    public boolean isOccupied(int x, int y) {
+        return (tiles[y * width + x] & OCCUPIED) != 0;
+    }
+
+    // Type of the tile underneath any occupant
+    public EntityType getBaseTileType(int x, int y) {
+        return TYPES[tiles[y * width + x] & TYPE_MASK];
     }
 
     public void setTile(int x, int y, Entity object) {
-        map[y][x] = object;
+        int index = y * width + x;
+        dirtyTiles.set(index);
+        if (object instanceof DynamicEntity entity) {
+            tiles[index] |= (byte) OCCUPIED; // Keep the base tile underneath the occupant
+            if (!occupants.contains(entity)) occupants.add(entity);
+        } else {
+            if ((tiles[index] & OCCUPIED) != 0) removeOccupantsAt(x, y);
+            EntityType oldType = TYPES[tiles[index] & TYPE_MASK];
+            tiles[index] = (byte) object.type().ordinal();
+            if (oldType != object.type()) {
+                modified = true;
+                tileVersion++;
+                if (tileListener != null) tileListener.tileChanged(this, x, y, object.type());
+                doorDistances = null;
+                repairDistanceFields(index, oldType, object.type());
+            }
+        }
+    }
+
+    // Move an occupant marker without touching the tile types; stepping entities never share a tile
+    public void moveOccupant(int fromX, int fromY, int toX, int toY) {
+        tiles[fromY * width + fromX] &= (byte) ~OCCUPIED;
+        tiles[toY * width + toX] |= (byte) OCCUPIED;
+        dirtyTiles.set(fromY * width + fromX);
+        dirtyTiles.set(toY * width + toX);
+    }
+
+    // Index of the next changed tile at or after from, or -1; the renderer redraws these and then clears them
+    public int nextDirtyTile(int from) {
+        return dirtyTiles.nextSetBit(from);
+    }
+
+    public void clearDirtyTiles() {
+        dirtyTiles.clear();
+    }
+
+    // Patch the cached fields around the changed tile; a field whose target was walled in is dropped
+    private void repairDistanceFields(int index, EntityType oldType, EntityType newType) {
+        if (distanceFields.isEmpty()) return;
+        if (repairQueue == null) repairQueue = new BucketQueue(tiles.length, tiles.length); // Distances stay below the tile count
+
+        Iterator<DistanceField> iterator = distanceFields.values().iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().tileChanged(index, oldType, newType, repairQueue)) iterator.remove();
+        }
+    }
+
+    private void removeOccupantsAt(int x, int y) {
+        for (int i = occupants.size() - 1; i >= 0; i--) {
+            DynamicEntity occupant = occupants.get(i);
+            if (occupant.getX() == x && occupant.getY() == y) occupants.remove(i);
+        }
     }
 
     public int getExitX() {
@@ -216,6 +344,64 @@ public class Dungeon {
         this.exitY = y;
     }
 
+    // Tile types without occupant markers, for saving
+    byte[] copyBaseTiles() {
+        byte[] copy = new byte[tiles.length];
+        for (int i = 0; i < tiles.length; i++) {
+            copy[i] = (byte) (tiles[i] & TYPE_MASK);
+        }
+        return copy;
+    }
+
+    // A copy of the tile bytes, occupancy included, that a search on another thread can read while this room keeps
+    // changing; take it on the game thread
+    public byte[] snapshotTiles() {
+        return tiles.clone();
+    }
+
+    // A copy of the tiles, exit and modified flag for a search on another thread, which must not touch this room or
+    // its caches; take it on the game thread
+    Dungeon detachedCopy() {
+        Dungeon copy = new Dungeon(width, height, gridX, gridY, tiles.clone(), exitX, exitY);
+        copy.modified = modified;
+        return copy;
+    }
+
+    // Walking distances from every tile to the target, built on first use and kept up to date as tiles change
+    public DistanceField getDistanceField(int targetX, int targetY) {
+        int target = targetY * width + targetX;
+        DistanceField field = distanceFields.get(target);
+        if (field == null) {
+            field = new DistanceField(this, targetX, targetY);
+            distanceFields.put(target, field);
+        }
+        return field;
+    }
+
+    int[] getDoorDistances() {
+        return doorDistances;
+    }
+
+    void setDoorDistances(int[] doorDistances) {
+        this.doorDistances = doorDistances;
+    }
+
+    public int getTileVersion() {
+        return tileVersion;
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
+
+    void resetModified() {
+        this.modified = false;
+    }
+
+    public GenerationReport getGenerationReport() {
+        return generationReport;
+    }
+
     public int getWidth() {
         return width;
     }
@@ -224,7 +410,21 @@ public class Dungeon {
         return height;
     }
 
-    public Entity[][] getMap() {
-        return map;
+    public List<DynamicEntity> getOccupants() {
+        return occupants;
+    }
+
+    void setTileListener(TileListener tileListener) {
+        this.tileListener = tileListener;
+    }
+
+    public Image getStaticLayer() {
+        return staticLayer;
+    }
+
+    // Replacing or dropping the layer frees the old one's video memory right away
+    public void setStaticLayer(Image staticLayer) {
+        if (this.staticLayer != null && this.staticLayer != staticLayer) this.staticLayer.flush();
+        this.staticLayer = staticLayer;
     }
 }
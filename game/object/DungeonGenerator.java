@@ -0,0 +1,7 @@
+package game.object;
+
+// Strategy that fills a freshly created dungeon with walls and floors
+public interface DungeonGenerator {
+    // Generate the room so that the exit and all four edge midpoints are reachable from (0, 0)
+    GenerationReport generate(Dungeon dungeon);
+}
@@ -0,0 +1,118 @@
+package game.object;
+
+import game.object.entity.EntityType;
+
+import java.util.Arrays;
+
+// Tiles visible from an origin within a radius, found by recursive shadowcasting over the eight octants; walls block
+// sight. Visibility is one bit per tile, stored as a bitset per row. The field is only recomputed when the origin
+// moves or a tile of the room changes type, and then only the rows the previous field covered are cleared.
+public class FieldOfView {
+    // Octant transforms: (dx, dy) in octant space maps to (dx * XX + dy * XY, dx * YX + dy * YY)
+    private static final int[] XX = {1, 0, 0, -1, -1, 0, 0, 1};
+    private static final int[] XY = {0, 1, -1, 0, 0, -1, 1, 0};
+    private static final int[] YX = {0, 1, 1, 0, 0, -1, -1, 0};
+    private static final int[] YY = {1, 0, 0, 1, -1, 0, 0, -1};
+
+    private final int width;
+    private final int height;
+    private final int words; // Longs per row
+    private final long[] visible;
+    private final int radius;
+    private Dungeon dungeon;
+    private int originX = -1, originY = -1;
+    private int tileVersion;
+    private int version; // Bumped on every recompute, so cached overlays know when to refresh
+
+    public FieldOfView(int width, int height, int radius) {
+        this.width = width;
+        this.height = height;
+        this.words = (width + 63) >>> 6;
+        this.visible = new long[words * height];
+        this.radius = radius;
+    }
+
+    // Recompute if the origin, the room or its tiles changed; returns whether anything was recomputed
+    public boolean update(Dungeon dungeon, int originX, int originY) {
+        if (dungeon == this.dungeon && originX == this.originX && originY == this.originY && dungeon.getTileVersion() == this.tileVersion) {
+            return false;
+        }
+
+        clearPrevious();
+        this.dungeon = dungeon;
+        this.originX = originX;
+        this.originY = originY;
+        this.tileVersion = dungeon.getTileVersion();
+
+        setVisible(originX, originY);
+        for (int octant = 0; octant < 8; octant++) {
+            castLight(1, 1.0, 0.0, XX[octant], XY[octant], YX[octant], YY[octant]);
+        }
+        version++;
+        return true;
+    }
+
+    public boolean isVisible(int x, int y) {
+        return (visible[y * words + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    public boolean isSized(int width, int height) {
+        return this.width == width && this.height == height;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    private void clearPrevious() {
+        if (dungeon == null) return;
+        int top = Math.max(0, originY - radius);
+        int bottom = Math.min(height - 1, originY + radius);
+        Arrays.fill(visible, top * words, (bottom + 1) * words, 0L);
+    }
+
+    // Scan one octant row by row, starting at the given distance, between two slopes. An opaque tile splits the
+    // scan: the part beyond it continues recursively, and the rest carries on with a narrower slope range.
+    private void castLight(int row, double start, double end, int xx, int xy, int yx, int yy) {
+        if (start < end) return;
+
+        double newStart = 0.0;
+        for (int distance = row; distance <= radius; distance++) {
+            boolean blocked = false;
+            for (int dx = -distance, dy = -distance; dx <= 0; dx++) {
+                double leftSlope = (dx - 0.5) / (dy + 0.5);
+                double rightSlope = (dx + 0.5) / (dy - 0.5);
+                if (start < rightSlope) continue;
+                if (end > leftSlope) break;
+
+                int x = originX + dx * xx + dy * xy;
+                int y = originY + dx * yx + dy * yy;
+                boolean inside = x >= 0 && x < width && y >= 0 && y < height;
+                if (inside && dx * dx + dy * dy <= radius * radius) setVisible(x, y);
+
+                boolean opaque = !inside || dungeon.getBaseTileType(x, y) == EntityType.WALL;
+                if (blocked) {
+                    if (opaque) {
+                        newStart = rightSlope;
+                    } else {
+                        blocked = false;
+                        start = newStart;
+                    }
+                } else if (opaque && distance < radius) {
+                    blocked = true;
+                    castLight(distance + 1, start, leftSlope, xx, xy, yx, yy);
+                    newStart = rightSlope;
+                }
+            }
+            if (blocked) break;
+        }
+    }
+
+    private void setVisible(int x, int y) {
+        visible[y * words + (x >>> 6)] |= 1L << x;
+    }
+}
@@ -0,0 +1,49 @@
+package game.object;
+
+// Direction of the next step towards a target for every tile of a room, derived from a DistanceField. Agents chasing
+// the same target share one flow field, so each of them pays a single array read per step.
+public class FlowField {
+    public static final byte NONE = -1; // At the target, or it can't be reached from here
+    private static final int[] DX = {-1, 1, 0, 0}; // Left, right, up, down
+    private static final int[] DY = {0, 0, -1, 1};
+
+    private final DistanceField field;
+    private final int width;
+    private final byte[] directions;
+    private int builtVersion = -1;
+
+    FlowField(DistanceField field, int width, int height) {
+        this.field = field;
+        this.width = width;
+        this.directions = new byte[width * height];
+    }
+
+    // Rebuild the directions if the distance field changed since the last build
+    void refresh() {
+        if (builtVersion == field.getVersion()) return;
+
+        for (int i = 0; i < directions.length; i++) {
+            int next = field.nextStep(i % width, i / width);
+            directions[i] = next == -1 ? NONE : directionTo(i, next);
+        }
+        builtVersion = field.getVersion();
+    }
+
+    private byte directionTo(int from, int to) {
+        if (to == from - 1) return 0;
+        if (to == from + 1) return 1;
+        return (byte) (to < from ? 2 : 3);
+    }
+
+    public int getDirection(int x, int y) {
+        return directions[y * width + x];
+    }
+
+    public static int dx(int direction) {
+        return DX[direction];
+    }
+
+    public static int dy(int direction) {
+        return DY[direction];
+    }
+}
@@ -3,157 +3,311 @@ package game.object;
 import game.Constants;
 import game.object.entity.EntityType;
 import game.object.entity.StaticEntity;
+import game.util.LongObjectMap;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.IntStream;
+import java.util.logging.Logger;
+
+public final class GameMap {
+    private static final Logger LOGGER = Logger.getLogger(GameMap.class.getName());
 
-public class GameMap {
     private final int DUNGEON_WIDTH, DUNGEON_HEIGHT, GRID_SIZE;
-    private final Dungeon[][] grid;
-    private Dungeon startingDungeon;
+    private final long seed;
+    private final int threads;
+    private final RoomSet rooms; // Layout skeleton: which grid cells hold a room
+    private final MapFile mapFile; // Saved rooms are read from here before falling back to the seed
+    private final Map<Long, Dungeon> dungeons = new LinkedHashMap<>(16, 0.75f, true); // Materialized rooms in access order
+    private int startX, startY;
+    private int exitRoomX, exitRoomY;
+    private RoomGraph roomGraph;
+    private TileListener tileListener; // Attached to every room once it is fully built
 
     public GameMap(int width, int height, int gridSize) {
+        this(width, height, gridSize, new SplittableRandom().nextLong());
+    }
+
+    public GameMap(int width, int height, int gridSize, long seed) {
+        this(width, height, gridSize, 0, seed, Runtime.getRuntime().availableProcessors());
+    }
+
+    // A roomCount of 0 picks between 40% and 80% of the grid; a given seed produces the same map regardless of the number of threads
+    public GameMap(int width, int height, int gridSize, int roomCount, long seed, int threads) {
+        if (gridSize < 2) throw new IllegalArgumentException("The grid needs room for at least two dungeons");
+
         this.DUNGEON_WIDTH = width;
         this.DUNGEON_HEIGHT = height;
         this.GRID_SIZE = gridSize;
+        this.seed = seed;
+        this.threads = threads;
+        this.mapFile = null;
 
-        this.grid = new Dungeon[GRID_SIZE][GRID_SIZE];
-        generateMap();
+        RoomIndex index = new RoomIndex();
+        this.rooms = index;
+        planLayout(new SplittableRandom(seed), index, roomCount);
+        buildStartingArea();
     }
 
-    private void generateMap() {
-        Random random = new Random();
-
-        createInitialDungeon(random);
-        createMoreDungeons(random);
-        addDoors();
-        selectStartingDungeon();
-        selectExitDungeon(random);
+    private GameMap(MapFile file) {
+        this.DUNGEON_WIDTH = file.getDungeonWidth();
+        this.DUNGEON_HEIGHT = file.getDungeonHeight();
+        this.GRID_SIZE = file.getGridSize();
+        this.seed = file.getSeed();
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.mapFile = file;
+        this.rooms = file;
+        this.startX = file.getStartX();
+        this.startY = file.getStartY();
+        this.exitRoomX = file.getExitRoomX();
+        this.exitRoomY = file.getExitRoomY();
     }
 
-    // Create the initial dungeon, from which all other dungeons branch out
-    private void createInitialDungeon(Random random) {
-        int firstDungeonX = random.nextInt(1, 2);
-        int firstDungeonY = random.nextInt(1, 2);
-        grid[firstDungeonX][firstDungeonY] = new Dungeon(DUNGEON_WIDTH, DUNGEON_HEIGHT, firstDungeonX, firstDungeonY);
+    // Open a saved map; nothing is decoded until a room is requested
+    public static GameMap load(Path path) throws IOException {
+        return new GameMap(MapFile.open(path));
     }
 
-    private void createMoreDungeons(Random random) {
-        AtomicInteger dungeonCount = new AtomicInteger(1); // Starting dungeon already placed
+    // Write the layout and the tiles of every materialized room; other rooms are rebuilt from the seed when loaded
+    public synchronized void save(Path path) throws IOException {
+        LongObjectMap<byte[]> payloads = new LongObjectMap<>(dungeons.size());
+        for (Map.Entry<Long, Dungeon> entry : dungeons.entrySet()) {
+            payloads.put(entry.getKey(), MapFile.encodeRoom(entry.getValue()));
+        }
+        MapFile.write(path, this, rooms, payloads);
+    }
 
+    // Grow the layout outwards from the initial room by adding random frontier cells; the work scales with
+    // the number of rooms, not the grid area, and only depends on the seed
+    private void planLayout(SplittableRandom random, RoomIndex rooms, int roomCount) {
         // Determine the total number of dungeons to create (between 40% and 80% of the grid)
-        int totalDungeons = GRID_SIZE * GRID_SIZE;
-        int targetDungeonCount = random.nextInt((int) (totalDungeons * Constants.DUNGEON_TARGET_COUNT_LOW),
+        long totalDungeons = (long) GRID_SIZE * GRID_SIZE;
+        int targetDungeonCount = roomCount > 0 ? roomCount : random.nextInt((int) (totalDungeons * Constants.DUNGEON_TARGET_COUNT_LOW),
                 (int) (totalDungeons * Constants.DUNGEON_TARGET_COUNT_HIGH));
+        targetDungeonCount = (int) Math.max(2, Math.min(targetDungeonCount, totalDungeons));
+
+        // The initial dungeon, from which all other dungeons branch out, is where the player starts
+        startX = GRID_SIZE / 2;
+        startY = GRID_SIZE / 2;
+        rooms.add(startX, startY);
+
+        long[] frontier = new long[64];
+        int frontierSize = addNeighbors(rooms, frontier, 0, startX, startY);
+        int exitCandidates = 0;
+
+        while (rooms.size() < targetDungeonCount) {
+            int pick = random.nextInt(frontierSize);
+            long cell = frontier[pick];
+            frontier[pick] = frontier[--frontierSize]; // Swap-remove keeps picking O(1)
 
-        try (ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
-            for (int i = 0; i < GRID_SIZE; i += GRID_SIZE / 2) { // Divide the grid into chunks and submit tasks to the executor
-                for (int j = 0; j < GRID_SIZE; j += GRID_SIZE / 2) {
-                    final int chunkStartX = i;
-                    final int chunkStartY = j;
-
-                    // Submit a task to process each chunk
-                    executor.submit(() -> IntStream.range(chunkStartX, Math.min(chunkStartX + GRID_SIZE / 2, GRID_SIZE)).forEach(x ->
-                            IntStream.range(chunkStartY, Math.min(chunkStartY + GRID_SIZE / 2, GRID_SIZE)).forEach(y -> {
-                                if (dungeonCount.get() >= targetDungeonCount) {
-                                    return; // Stop creating dungeons if the target is reached
-                                }
-                                synchronized (grid) {
-                                    if (grid[x][y] == null && hasAdjacentDungeon(x, y)) {
-                                        boolean shouldCreateDungeon = random.nextDouble() < 0.67; // 2/3 chance
-                                        if (shouldCreateDungeon && dungeonCount.get() < targetDungeonCount) {
-                                            grid[x][y] = new Dungeon(DUNGEON_WIDTH, DUNGEON_HEIGHT, x, y);
-                                            dungeonCount.incrementAndGet(); // Increment count safely
-                                        }
-                                    }
-                                }
-                            })
-                    ));
-                }
+            int x = RoomIndex.unpackX(cell);
+            int y = RoomIndex.unpackY(cell);
+            if (!rooms.add(x, y)) continue; // Already placed through another neighbor
+
+            // Reservoir sampling picks the exit room uniformly without a second pass over the rooms
+            if (random.nextInt(++exitCandidates) == 0) {
+                exitRoomX = x;
+                exitRoomY = y;
             }
+
+            if (frontier.length - frontierSize < 4) frontier = Arrays.copyOf(frontier, frontier.length * 2);
+            frontierSize = addNeighbors(rooms, frontier, frontierSize, x, y);
         }
     }
 
-    private void addDoors() {
-        // Add doors
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                Dungeon d = grid[i][j];
-                if (d != null) {
-                    if (i > 0 && grid[i - 1][j] != null) { // Check left
-                        d.addDoor(0, DUNGEON_HEIGHT / 2);
-                    }
-                    if (j > 0 && grid[i][j - 1] != null) { // Check up
-                        d.addDoor(DUNGEON_WIDTH / 2, 0);
-                    }
-                    if (i < GRID_SIZE - 1 && grid[i + 1][j] != null) { // Check right
-                        d.addDoor(DUNGEON_WIDTH - 1, DUNGEON_HEIGHT / 2);
-                    }
-                    if (j < GRID_SIZE - 1 && grid[i][j + 1] != null) { // Check down
-                        d.addDoor(DUNGEON_WIDTH / 2, DUNGEON_HEIGHT - 1);
+    private int addNeighbors(RoomIndex rooms, long[] frontier, int size, int x, int y) {
+        if (x > 0 && !rooms.contains(x - 1, y)) frontier[size++] = RoomIndex.pack(x - 1, y); // Left
+        if (y > 0 && !rooms.contains(x, y - 1)) frontier[size++] = RoomIndex.pack(x, y - 1); // Up
+        if (x < GRID_SIZE - 1 && !rooms.contains(x + 1, y)) frontier[size++] = RoomIndex.pack(x + 1, y); // Right
+        if (y < GRID_SIZE - 1 && !rooms.contains(x, y + 1)) frontier[size++] = RoomIndex.pack(x, y + 1); // Down
+        return size;
+    }
+
+    // Build the starting room and the rooms next to it up front, in parallel, since the player reaches them first
+    private void buildStartingArea() {
+        int[] cells = {startX, startY, startX - 1, startY, startX + 1, startY, startX, startY - 1, startX, startY + 1};
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int i = 0; i < cells.length; i += 2) {
+                if (!hasRoom(cells[i], cells[i + 1])) continue;
+
+                final int roomX = cells[i];
+                final int roomY = cells[i + 1];
+                executor.submit(() -> {
+                    Dungeon dungeon = createDungeon(roomX, roomY);
+                    synchronized (this) {
+                        dungeons.put(RoomIndex.pack(roomX, roomY), dungeon);
                     }
-                }
+                });
             }
+        } // Closing the executor waits for every room
+    }
+
+    // Return the room at the given grid cell, building it on first access
+    public synchronized Dungeon getDungeon(int x, int y) {
+        if (!hasRoom(x, y)) return null;
+
+        Dungeon dungeon = dungeons.get(RoomIndex.pack(x, y));
+        if (dungeon == null) {
+            dungeon = createDungeon(x, y);
+            dungeon.setTileListener(tileListener);
+            dungeons.put(RoomIndex.pack(x, y), dungeon);
+            evictDungeons(x, y);
         }
+        return dungeon;
     }
 
-    private void selectStartingDungeon() {
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                if (grid[i][j] != null) {
-                    startingDungeon = grid[i][j];
-                }
-            }
+    // Report tile changes of all materialized rooms, now and later, to the listener
+    public synchronized void setTileListener(TileListener tileListener) {
+        this.tileListener = tileListener;
+        for (Dungeon dungeon : dungeons.values()) {
+            dungeon.setTileListener(tileListener);
         }
     }
 
-    private void selectExitDungeon(Random random) {
-        // Create a list of all dungeons except the starting one
-        List<Dungeon> dungeons = new ArrayList<>();
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                if (grid[i][j] != null && grid[i][j] != startingDungeon) {
-                    dungeons.add(grid[i][j]);
-                }
-            }
+    // The room if it is currently materialized, without building it
+    synchronized Dungeon getLoadedDungeon(int x, int y) {
+        return dungeons.get(RoomIndex.pack(x, y));
+    }
+
+    // Materialized rooms whose tiles differ from what the seed or the map file would build
+    synchronized List<Dungeon> getModifiedDungeons() {
+        List<Dungeon> modified = new ArrayList<>();
+        for (Dungeon dungeon : dungeons.values()) {
+            if (dungeon.isModified()) modified.add(dungeon);
         }
+        return modified;
+    }
 
-        // Randomly select a dungeon from the list to be the exit dungeon
-        Dungeon exitDungeon = dungeons.get(random.nextInt(dungeons.size()));
-        exitDungeon.setTile(exitDungeon.getExitX(), exitDungeon.getExitY(), new StaticEntity(EntityType.EXIT));
+    // A throwaway room built from the seed or the map file that is not cached, so reading a far away room doesn't
+    // push the rooms in use out of the cache. It is built outside the lock, like the starting area, and matches what
+    // getDungeon would build for a room that isn't materialized or was never modified.
+    Dungeon createDetachedDungeon(int x, int y) {
+        return createDungeon(x, y);
+    }
 
-        // Remove the exit from all other dungeons
-        for (Dungeon i: dungeons) {
-            if (i != exitDungeon) {
-                i.setExitX(-1);
-                i.setExitY(-1);
-            }
+    private Dungeon createDungeon(int x, int y) {
+        Dungeon saved = mapFile != null ? mapFile.readRoom(x, y) : null;
+        Dungeon dungeon = saved != null ? saved
+                : new Dungeon(DUNGEON_WIDTH, DUNGEON_HEIGHT, x, y, new CorridorDungeonGenerator(), new SplittableRandom(roomSeed(x, y)));
+        addDoors(dungeon);
+
+        if (saved != null) { // Saved tiles and exit position are used as they are
+            LOGGER.fine(() -> String.format("Loaded room (%d, %d) from the map file", x, y));
+            return dungeon;
+        }
+
+        if (x == exitRoomX && y == exitRoomY) {
+            dungeon.setTile(dungeon.getExitX(), dungeon.getExitY(), StaticEntity.of(EntityType.EXIT));
+        } else { // Remove the exit from all other dungeons
+            dungeon.setExitX(-1);
+            dungeon.setExitY(-1);
         }
+
+        dungeon.resetModified(); // Everything so far can be rebuilt from the seed
+        LOGGER.fine(() -> String.format("Built room (%d, %d): %s", x, y, dungeon.getGenerationReport()));
+        return dungeon;
     }
 
-    private boolean hasAdjacentDungeon(int x, int y) {
-        if (x > 0 && grid[x - 1][y] != null) { // Check left
-            return true;
+    private void addDoors(Dungeon d) {
+        int i = d.getGridX();
+        int j = d.getGridY();
+        if (hasRoom(i - 1, j)) { // Check left
+            d.addDoor(0, DUNGEON_HEIGHT / 2);
+        }
+        if (hasRoom(i, j - 1)) { // Check up
+            d.addDoor(DUNGEON_WIDTH / 2, 0);
+        }
+        if (hasRoom(i + 1, j)) { // Check right
+            d.addDoor(DUNGEON_WIDTH - 1, DUNGEON_HEIGHT / 2);
         }
-        if (y > 0 && grid[x][y - 1] != null) { // Check up
-            return true;
+        if (hasRoom(i, j + 1)) { // Check down
+            d.addDoor(DUNGEON_WIDTH / 2, DUNGEON_HEIGHT - 1);
         }
-        if (x < GRID_SIZE - 1 && grid[x + 1][y] != null) { // Check right
-            return true;
+    }
+
+    // Free the static layers of all materialized rooms right away instead of whenever the map is collected; for a
+    // map that is no longer shown
+    public synchronized void releaseStaticLayers() {
+        for (Dungeon dungeon : dungeons.values()) {
+            dungeon.setStaticLayer(null);
+        }
+    }
+
+    // Drop the least recently used rooms that are unmodified, empty and not next to the room being entered
+    private void evictDungeons(int x, int y) {
+        Iterator<Dungeon> iterator = dungeons.values().iterator();
+        while (dungeons.size() > Constants.ROOM_CACHE_SIZE && iterator.hasNext()) {
+            Dungeon d = iterator.next();
+            boolean nearby = Math.abs(d.getGridX() - x) + Math.abs(d.getGridY() - y) <= 1;
+            if (!nearby && !d.isModified() && d.getOccupants().isEmpty()) {
+                d.setStaticLayer(null);
+                iterator.remove();
+            }
         }
-        return y < GRID_SIZE - 1 && grid[x][y + 1] != null; // Check down
+    }
+
+    // Each room's seed is derived from the map seed and its position, so nothing per room has to be stored
+    private long roomSeed(int x, int y) {
+        long z = seed ^ RoomIndex.pack(x, y) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public boolean hasRoom(int x, int y) {
+        return x >= 0 && x < GRID_SIZE && y >= 0 && y < GRID_SIZE && rooms.contains(x, y);
+    }
+
+    public long getSeed() {
+        return seed;
     }
 
     public Dungeon getStartingDungeon() {
-        return startingDungeon;
+        return getDungeon(startX, startY);
+    }
+
+    public synchronized RoomGraph getRoomGraph() {
+        if (roomGraph == null) roomGraph = new RoomGraph(this);
+        return roomGraph;
+    }
+
+    public int getStartingRoomX() {
+        return startX;
+    }
+
+    public int getStartingRoomY() {
+        return startY;
+    }
+
+    public int getDungeonWidth() {
+        return DUNGEON_WIDTH;
+    }
+
+    public int getDungeonHeight() {
+        return DUNGEON_HEIGHT;
+    }
+
+    public int getExitRoomX() {
+        return exitRoomX;
+    }
+
+    public int getExitRoomY() {
+        return exitRoomY;
+    }
+
+    public int getGridSize() {
+        return GRID_SIZE;
     }
 
-    public Dungeon[][] getGrid() {
-        return grid;
+    public int getRoomCount() {
+        return rooms.size();
     }
 }
@@ -0,0 +1,5 @@
+package game.object;
+
+// How much work a generator needed for one room, used to compare strategies on level-load latency
+public record GenerationReport(String generator, int attempts, long elapsedNanos) {
+}
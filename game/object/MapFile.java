@@ -0,0 +1,267 @@
+package game.object;
+
+import game.util.LongObjectMap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Binary map format, big-endian:
+ *   header   magic, version, seed, dungeon width and height, grid size, room count, start room, exit room
+ *   index    one entry per room sorted by packed coordinates: key, payload offset, payload length
+ *   payloads exit position followed by run-length encoded tile types; rooms without a payload are rebuilt from the seed
+ *
+ * A loaded file stays memory-mapped: room lookups binary-search the index and a room is decoded only when it is first built.
+ */
+class MapFile implements RoomSet {
+    private static final int MAGIC = 0x44434D50; // "DCMP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 * 8;
+    private static final int INDEX_ENTRY_SIZE = 8 + 8 + 4;
+
+    private final MappedByteBuffer buffer;
+    private final long seed;
+    private final int dungeonWidth, dungeonHeight, gridSize, roomCount;
+    private final int startX, startY, exitRoomX, exitRoomY;
+
+    private MapFile(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a dungeon map file");
+        }
+
+        this.seed = buffer.getLong(8);
+        this.dungeonWidth = buffer.getInt(16);
+        this.dungeonHeight = buffer.getInt(20);
+        this.gridSize = buffer.getInt(24);
+        this.roomCount = buffer.getInt(28);
+        this.startX = buffer.getInt(32);
+        this.startY = buffer.getInt(36);
+        this.exitRoomX = buffer.getInt(40);
+        this.exitRoomY = buffer.getInt(44);
+        validate();
+    }
+
+    // Check the sizes up front, so a truncated or damaged file fails to open instead of failing when a room is read
+    private void validate() throws IOException {
+        if (dungeonWidth <= 0 || dungeonHeight <= 0 || gridSize <= 0 || roomCount < 0) {
+            throw new IOException("Map file has an invalid header");
+        }
+        long indexEnd = HEADER_SIZE + (long) roomCount * INDEX_ENTRY_SIZE;
+        if (buffer.capacity() < indexEnd) {
+            throw new IOException("Map file is truncated: the index needs " + indexEnd + " bytes, the file has " + buffer.capacity());
+        }
+
+        for (int i = 0; i < roomCount; i++) {
+            int entry = HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+            long offset = buffer.getLong(entry + 8);
+            int length = buffer.getInt(entry + 16);
+            if (length == 0) continue;
+            if (length < 8 || offset < indexEnd || offset + length > buffer.capacity()) {
+                throw new IOException("Map file is truncated or damaged: room payload at " + offset + " with length " + length);
+            }
+        }
+    }
+
+    static MapFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Map file is too large to map");
+            return new MapFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())); // The mapping outlives the channel
+        }
+    }
+
+    static void write(Path path, GameMap map, RoomSet rooms, LongObjectMap<byte[]> payloads) throws IOException {
+        long[] keys = new long[rooms.size()];
+        int[] count = {0};
+        rooms.forEach((x, y) -> keys[count[0]++] = RoomIndex.pack(x, y));
+        Arrays.sort(keys);
+
+        // Write next to the target and move it into place, so a crash mid-save never leaves a partial file behind
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(map.getSeed());
+            out.writeInt(map.getDungeonWidth());
+            out.writeInt(map.getDungeonHeight());
+            out.writeInt(map.getGridSize());
+            out.writeInt(keys.length);
+            out.writeInt(map.getStartingRoomX());
+            out.writeInt(map.getStartingRoomY());
+            out.writeInt(map.getExitRoomX());
+            out.writeInt(map.getExitRoomY());
+
+            long offset = HEADER_SIZE + (long) keys.length * INDEX_ENTRY_SIZE;
+            for (long key : keys) {
+                byte[] payload = payloads.get(key);
+                out.writeLong(key);
+                out.writeLong(payload != null ? offset : 0);
+                out.writeInt(payload != null ? payload.length : 0);
+                if (payload != null) offset += payload.length;
+            }
+
+            for (long key : keys) {
+                byte[] payload = payloads.get(key);
+                if (payload != null) out.write(payload);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    // Exit position, then (tile type, run length) pairs with the length as an unsigned varint
+    static byte[] encodeRoom(Dungeon dungeon) {
+        byte[] tiles = dungeon.copyBaseTiles();
+        byte[] out = new byte[8 + tiles.length * 6]; // Worst case: every tile starts a new run
+        int position = writeInt(out, 0, dungeon.getExitX());
+        position = writeInt(out, position, dungeon.getExitY());
+
+        for (int i = 0; i < tiles.length; ) {
+            int run = 1;
+            while (i + run < tiles.length && tiles[i + run] == tiles[i]) run++;
+
+            out[position++] = tiles[i];
+            for (int value = run; ; value >>>= 7) {
+                if ((value & ~0x7F) == 0) {
+                    out[position++] = (byte) value;
+                    break;
+                }
+                out[position++] = (byte) ((value & 0x7F) | 0x80);
+            }
+            i += run;
+        }
+        return Arrays.copyOf(out, position);
+    }
+
+    // Decode the stored room, or return null if it has no payload and has to be generated
+    Dungeon readRoom(int x, int y) {
+        int entry = findEntry(RoomIndex.pack(x, y));
+        if (entry < 0) return null;
+
+        long offset = buffer.getLong(entry + 8);
+        int length = buffer.getInt(entry + 16);
+        if (length == 0) return null;
+
+        int position = (int) offset;
+        int end = position + length;
+        int exitX = buffer.getInt(position);
+        int exitY = buffer.getInt(position + 4);
+        position += 8;
+
+        byte[] tiles = new byte[dungeonWidth * dungeonHeight];
+        int tile = 0;
+        while (position < end) {
+            byte type = buffer.get(position++);
+            int run = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (position == end || shift > 28) throw damagedRoom(x, y);
+                byte b = buffer.get(position++);
+                run |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            if (run <= 0 || run > tiles.length - tile) throw damagedRoom(x, y);
+            Arrays.fill(tiles, tile, tile + run, type);
+            tile += run;
+        }
+
+        return new Dungeon(dungeonWidth, dungeonHeight, x, y, tiles, exitX, exitY);
+    }
+
+    // Rooms are decoded while the map is played, where an IOException can't be declared
+    private static UncheckedIOException damagedRoom(int x, int y) {
+        return new UncheckedIOException(new IOException(String.format("Map file has damaged tiles in room (%d, %d)", x, y)));
+    }
+
+    // Binary search over the sorted index; returns the byte position of the entry or -1
+    private int findEntry(long key) {
+        int low = 0, high = roomCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = HEADER_SIZE + mid * INDEX_ENTRY_SIZE;
+            long midKey = buffer.getLong(entry);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private static int writeInt(byte[] out, int position, int value) {
+        out[position] = (byte) (value >>> 24);
+        out[position + 1] = (byte) (value >>> 16);
+        out[position + 2] = (byte) (value >>> 8);
+        out[position + 3] = (byte) value;
+        return position + 4;
+    }
+
+    @Override
+    public boolean contains(int x, int y) {
+        return findEntry(RoomIndex.pack(x, y)) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return roomCount;
+    }
+
+    @Override
+    public void forEach(RoomConsumer consumer) {
+        for (int i = 0; i < roomCount; i++) {
+            long key = buffer.getLong(HEADER_SIZE + i * INDEX_ENTRY_SIZE);
+            consumer.accept(RoomIndex.unpackX(key), RoomIndex.unpackY(key));
+        }
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    int getDungeonWidth() {
+        return dungeonWidth;
+    }
+
+    int getDungeonHeight() {
+        return dungeonHeight;
+    }
+
+    int getGridSize() {
+        return gridSize;
+    }
+
+    int getStartX() {
+        return startX;
+    }
+
+    int getStartY() {
+        return startY;
+    }
+
+    int getExitRoomX() {
+        return exitRoomX;
+    }
+
+    int getExitRoomY() {
+        return exitRoomY;
+    }
+}
@@ -1,82 +1,188 @@
 package game.object;
 
+import game.Constants;
 import game.GameState;
 import game.object.entity.EntityType;
+import game.util.BucketQueue;
 
-import java.awt.*;
-import java.util.List;
-import java.util.*;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
 
+// A* or Jump Point Search over tile indices (y * width + x). All search state lives in arrays that are reused
+// between searches and reset by bumping a generation stamp, so a search allocates nothing but the returned path.
+// Step costs come from a per-type table resolved at the start of each search; in bulldozer mode walls can be dug
+// through at a higher cost than floor. The grid is a copy of a room's tile bytes (Dungeon.snapshotTiles), so a search
+// can run on another thread while the room changes; one Pathfinder still runs only one search at a time.
 public class Pathfinder {
-    private final Dungeon dungeon;
+    private static final int[] DX = {-1, 1, 0, 0}; // Left, right, up, down
+    private static final int[] DY = {0, 0, -1, 1};
+    private static final EntityType[] TYPES = EntityType.values();
+    private static final int IMPASSABLE = 0;
+    private static final int CANCEL_CHECK_MASK = 1023; // Ask whether the search was cancelled every 1024 expansions
 
-    public Pathfinder(Dungeon dungeon) {
-        this.dungeon = dungeon;
+    private final int width;
+    private final int height;
+    private final int[] gScore; // Cost from start, valid when visited[node] == generation
+    private final int[] parent; // Previous tile on the best known path
+    private final int[] visited; // Generation in which the node was first reached
+    private final int[] closed; // Generation in which the node was expanded
+    private final BucketQueue openSet; // f-scores are small integers that never decrease, so Dial's queue fits
+    private final int[] stepCosts = new int[TYPES.length]; // Cost of entering a tile, by type; IMPASSABLE if it can't be
+    private boolean uniformCosts; // Every passable tile costs 1, so Jump Point Search applies
+    private int generation;
+    private PathfinderMode mode = Constants.PATHFINDER_MODE;
+    private int expandedNodes; // Nodes taken off the open set by the last search
+    private byte[] tiles; // Grid of the current search
+    private int goalX, goalY;
+    private int nodeBudget;
+    private BooleanSupplier cancelled;
+    private boolean aborted; // The last search ran out of budget or was cancelled
+
+    public Pathfinder(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        int size = width * height;
+        this.gScore = new int[size];
+        this.parent = new int[size];
+        this.visited = new int[size];
+        this.closed = new int[size];
+        // An A* step raises f by at most its cost plus one; a jump raises it by at most twice its length
+        this.openSet = new BucketQueue(size, Math.max(Constants.BULLDOZER_WALL_COST + 1, 2 * (width + height)));
     }
 
-    private boolean isValidTileForPathfinder(int x, int y) {
-        if (GameState.isBulldozerMode()) {
-            return x >= 0 && x < dungeon.getWidth() && y >= 0 && y < dungeon.getHeight() && (dungeon.getMap()[y][x].type() == EntityType.FLOOR || dungeon.getMap()[y][x].type() == EntityType.WALL);
-        } else {
-            return x >= 0 && x < dungeon.getWidth() && y >= 0 && y < dungeon.getHeight() && dungeon.getMap()[y][x].type() == EntityType.FLOOR;
-        }
+    // Resolved once per search, so the inner loop is a table lookup instead of a mode check per neighbor
+    private void resolveStepCosts() {
+        Arrays.fill(stepCosts, IMPASSABLE);
+        stepCosts[EntityType.FLOOR.ordinal()] = 1;
+        if (GameState.isBulldozerMode()) stepCosts[EntityType.WALL.ordinal()] = Math.max(1, Constants.BULLDOZER_WALL_COST);
+        uniformCosts = stepCosts[EntityType.WALL.ordinal()] <= 1;
     }
 
-    private java.util.List<Point> reconstructPath(Node currentNode) {
-        java.util.List<Point> path = new LinkedList<>();
-        while (currentNode != null) {
-            path.add(currentNode.point);
-            currentNode = currentNode.parent;
-        }
-        Collections.reverse(path); // Reverse the path to get from start to goal
-        return path;
+    // Cost of entering the tile, or IMPASSABLE. The goal is always enterable, so doors and the exit can be walked
+    // to even though paths never pass through them.
+    private int stepCost(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) return IMPASSABLE;
+        int tile = tiles[y * width + x];
+        int cost = (tile & Dungeon.OCCUPIED) != 0 ? IMPASSABLE : stepCosts[tile & Dungeon.TYPE_MASK];
+        return cost == IMPASSABLE && x == goalX && y == goalY ? 1 : cost;
+    }
+
+    private boolean isPassable(int x, int y) {
+        return stepCost(x, y) != IMPASSABLE;
     }
 
-    private double heuristic(int x1, int y1, int x2, int y2) {
+    private int heuristic(int x1, int y1, int x2, int y2) {
         return Math.abs(x1 - x2) + Math.abs(y1 - y2);
     }
 
-    private java.util.List<Point> getNeighbors(Point point) {
-        java.util.List<Point> neighbors = new ArrayList<>();
-        int x = point.x;
-        int y = point.y;
-        if (isValidTileForPathfinder(x - 1, y)) neighbors.add(new Point(x - 1, y)); // Left
-        if (isValidTileForPathfinder(x + 1, y)) neighbors.add(new Point(x + 1, y)); // Right
-        if (isValidTileForPathfinder(x, y - 1)) neighbors.add(new Point(x, y - 1)); // Up
-        if (isValidTileForPathfinder(x, y + 1)) neighbors.add(new Point(x, y + 1)); // Down
-        return neighbors;
+    // Returns the tile indices from start to goal, or null if the goal can't be reached
+    public int[] findPath(byte[] tiles, int startX, int startY, int goalX, int goalY) {
+        return findPath(tiles, startX, startY, goalX, goalY, Constants.PATHFINDER_NODE_BUDGET, null);
     }
 
-    // A* algorithm
-    public List<Point> findPath(int startX, int startY, int goalX, int goalY) {
-        PriorityQueue<Node> openSet = new PriorityQueue<>();
-        Set<Point> closedSet = new HashSet<>();
+    // Like findPath, but gives up and returns null after nodeBudget expansions or once cancelled reports true
+    public int[] findPath(byte[] tiles, int startX, int startY, int goalX, int goalY, int nodeBudget, BooleanSupplier cancelled) {
+        if (tiles.length != width * height) throw new IllegalArgumentException("The grid doesn't match the pathfinder's size");
 
-        Node startNode = new Node(new Point(startX, startY), null, 0, heuristic(startX, startY, goalX, goalY));
-        openSet.add(startNode);
+        this.tiles = tiles;
+        nextGeneration();
+        expandedNodes = 0;
+        aborted = false;
+        this.nodeBudget = nodeBudget;
+        this.cancelled = cancelled;
+        this.goalX = goalX;
+        this.goalY = goalY;
+        resolveStepCosts();
+
+        if (mode == PathfinderMode.JUMP_POINT && uniformCosts) { // Jumps assume every step costs the same
+            return findJumpPointPath(startX, startY, goalX, goalY);
+        }
+        return findAStarPath(startX, startY, goalX, goalY);
+    }
+
+    // A* algorithm
+    private int[] findAStarPath(int startX, int startY, int goalX, int goalY) {
+        int start = startY * width + startX;
+        int goal = goalY * width + goalX;
+        visit(start, 0, -1);
+        openSet.insertOrDecrease(start, heuristic(startX, startY, goalX, goalY));
 
         while (!openSet.isEmpty()) {
-            Node currentNode = openSet.poll();
+            int current = openSet.poll();
+            if (shouldAbort()) return null;
 
             // Check if we reached the goal
-            if (currentNode.point.x == goalX && currentNode.point.y == goalY) {
-                return reconstructPath(currentNode);
+            if (current == goal) {
+                return reconstructPath(goal);
             }
 
-            closedSet.add(currentNode.point);
+            closed[current] = generation;
+            int x = current % width;
+            int y = current / width;
 
             // Explore neighbors
-            for (Point neighbor : getNeighbors(currentNode.point)) {
-                if (closedSet.contains(neighbor) || !isValidTileForPathfinder(neighbor.x, neighbor.y)) {
-                    continue; // Skip if already visited or not valid
+            for (int direction = 0; direction < 4; direction++) {
+                int nx = x + DX[direction];
+                int ny = y + DY[direction];
+                int cost = stepCost(nx, ny);
+                if (cost == IMPASSABLE) continue;
+
+                int neighbor = ny * width + nx;
+                if (closed[neighbor] == generation) continue; // Already expanded
+
+                int tentativeG = gScore[current] + cost;
+                if (visited[neighbor] != generation || tentativeG < gScore[neighbor]) {
+                    visit(neighbor, tentativeG, current);
+                    openSet.insertOrDecrease(neighbor, tentativeG + heuristic(nx, ny, goalX, goalY));
                 }
+            }
+        }
+
+        return null; // No path found
+    }
 
-                double tentativeG = currentNode.g + 1; // Assuming cost of 1 for each step
-                Node neighborNode = new Node(neighbor, currentNode, tentativeG, heuristic(neighbor.x, neighbor.y, goalX, goalY));
+    // Jump Point Search adapted to 4-connected movement: straight runs are skipped until a forced neighbor,
+    // so only their end points are queued. Paths are as short as A*'s.
+    private int[] findJumpPointPath(int startX, int startY, int goalX, int goalY) {
+        int start = startY * width + startX;
+        int goal = goalY * width + goalX;
+        visit(start, 0, -1);
+        openSet.insertOrDecrease(start, heuristic(startX, startY, goalX, goalY));
+
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            if (shouldAbort()) return null;
+
+            if (current == goal) {
+                return reconstructJumpPath(goal);
+            }
 
-                // Check if this path to the neighbor is better
-                if (!openSet.contains(neighborNode) || tentativeG < neighborNode.g) {
-                    openSet.add(neighborNode);
+            closed[current] = generation;
+            int x = current % width;
+            int y = current / width;
+
+            // Only continue in the directions that can't be reached more cheaply through the parent
+            int dx = 0, dy = 0;
+            if (parent[current] != -1) {
+                dx = Integer.signum(x - parent[current] % width);
+                dy = Integer.signum(y - parent[current] / width);
+            }
+
+            for (int direction = 0; direction < 4; direction++) {
+                int ddx = DX[direction];
+                int ddy = DY[direction];
+                if ((dx != 0 && ddx == -dx) || (dy != 0 && ddy == -dy)) continue; // Never turn back
+
+                int jumpPoint = ddx != 0 ? jumpHorizontal(x + ddx, y, ddx, goal) : jumpVertical(x, y + ddy, ddy, goal);
+                if (jumpPoint == -1 || closed[jumpPoint] == generation) continue;
+
+                int jx = jumpPoint % width;
+                int jy = jumpPoint / width;
+                int tentativeG = gScore[current] + Math.abs(jx - x) + Math.abs(jy - y);
+                if (visited[jumpPoint] != generation || tentativeG < gScore[jumpPoint]) {
+                    visit(jumpPoint, tentativeG, current);
+                    openSet.insertOrDecrease(jumpPoint, tentativeG + heuristic(jx, jy, goalX, goalY));
                 }
             }
         }
@@ -84,25 +190,106 @@ public class Pathfinder {
         return null; // No path found
     }
 
-    // Node class to hold information for A* algorithm
-    private static class Node implements Comparable<Node> {
-        public Point point;
-        public Node parent;
-        public double g; // Cost from start to current node
-        public double h; // Heuristic cost to goal
-        public double f; // Total cost (g + h)
-
-        public Node(Point point, Node parent, double g, double h) {
-            this.point = point;
-            this.parent = parent;
-            this.g = g;
-            this.h = h;
-            this.f = g + h;
+    // Walk horizontally until the goal, a wall, or a tile with a newly opened vertical neighbor
+    private int jumpHorizontal(int x, int y, int dx, int goal) {
+        while (isPassable(x, y)) {
+            int node = y * width + x;
+            if (node == goal) return node;
+            if ((isPassable(x, y - 1) && !isPassable(x - dx, y - 1)) ||
+                    (isPassable(x, y + 1) && !isPassable(x - dx, y + 1))) {
+                return node; // Forced neighbor
+            }
+            x += dx;
         }
+        return -1;
+    }
 
-        @Override
-        public int compareTo(Node other) {
-            return Double.compare(this.f, other.f);
+    // Walk vertically; besides forced neighbors, stop wherever a horizontal jump would find something
+    private int jumpVertical(int x, int y, int dy, int goal) {
+        while (isPassable(x, y)) {
+            int node = y * width + x;
+            if (node == goal) return node;
+            if ((isPassable(x - 1, y) && !isPassable(x - 1, y - dy)) ||
+                    (isPassable(x + 1, y) && !isPassable(x + 1, y - dy))) {
+                return node; // Forced neighbor
+            }
+            if (jumpHorizontal(x + 1, y, 1, goal) != -1 || jumpHorizontal(x - 1, y, -1, goal) != -1) {
+                return node;
+            }
+            y += dy;
+        }
+        return -1;
+    }
+
+    private boolean shouldAbort() {
+        expandedNodes++;
+        if (expandedNodes > nodeBudget || ((expandedNodes & CANCEL_CHECK_MASK) == 0 && cancelled != null && cancelled.getAsBoolean())) {
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    private void visit(int node, int g, int from) {
+        visited[node] = generation;
+        gScore[node] = g;
+        parent[node] = from;
+    }
+
+    private void nextGeneration() {
+        openSet.clear();
+        if (++generation == Integer.MAX_VALUE) { // Wrapped around: start over with clean stamps
+            Arrays.fill(visited, 0);
+            Arrays.fill(closed, 0);
+            generation = 1;
+        }
+    }
+
+    // Fill in the straight runs between consecutive jump points
+    private int[] reconstructJumpPath(int goal) {
+        int length = gScore[goal] + 1;
+        int[] path = new int[length];
+        int i = length - 1;
+        int node = goal;
+        for (; parent[node] != -1; node = parent[node]) {
+            int from = parent[node];
+            int step = node / width == from / width ? Integer.signum(node - from) : Integer.signum(node - from) * width;
+            for (int tile = node; tile != from; tile -= step) {
+                path[i--] = tile;
+            }
+        }
+        path[0] = node; // The start
+        return path;
+    }
+
+    private int[] reconstructPath(int goal) {
+        int length = 1; // The cost no longer equals the step count once walls cost more than floor
+        for (int node = goal; parent[node] != -1; node = parent[node]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int node = goal, i = length - 1; node != -1; node = parent[node], i--) {
+            path[i] = node;
         }
+        return path;
+    }
+
+    public void setMode(PathfinderMode mode) {
+        this.mode = mode;
+    }
+
+    public PathfinderMode getMode() {
+        return mode;
+    }
+
+    public boolean isSized(int width, int height) {
+        return this.width == width && this.height == height;
+    }
+
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    public boolean wasAborted() {
+        return aborted;
     }
 }
@@ -0,0 +1,6 @@
+package game.object;
+
+public enum PathfinderMode {
+    A_STAR,
+    JUMP_POINT // Jump Point Search; prunes symmetric paths, relies on every step costing the same
+}
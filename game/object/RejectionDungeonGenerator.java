@@ -0,0 +1,21 @@
+package game.object;
+
+// Original strategy: generate random rooms until one happens to connect the exit and all doors
+public class RejectionDungeonGenerator implements DungeonGenerator {
+    @Override
+    public GenerationReport generate(Dungeon dungeon) {
+        long start = System.nanoTime();
+        int attempts = 0;
+
+        boolean allEdgeMiddlesReachable = false;
+        while (!allEdgeMiddlesReachable) { // Keep generating until the exit and all doors are reachable
+            attempts++;
+            dungeon.generateDungeonStructure();
+            dungeon.ensureAdjacentWalls();
+            dungeon.fillInaccessibleAreasWithWalls();
+            allEdgeMiddlesReachable = dungeon.areExitsAndDoorsReachable();
+        }
+
+        return new GenerationReport("rejection", attempts, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,390 @@
+package game.object;
+
+import game.object.entity.EntityType;
+import game.util.IndexedMinHeap;
+import game.util.LongObjectMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+// Hierarchical pathfinding over the door graph of a GameMap. Nodes are door tiles, edges are door-to-door walking
+// distances inside a room, read from the room's distance fields and cached on the Dungeon. A route is a list
+// of waypoints, one per room, so only the room currently being walked needs a tile-level path. Like Pathfinder,
+// the search keeps its state in arrays over node ids that are reused between searches; they grow with the rooms
+// searches reach, not with the size of the map.
+//
+// Threading: prepareRoute runs on the game thread and copies the rooms that may differ from what the seed builds: the
+// start room, the goal room if it is materialized, and modified rooms whose door distances aren't cached yet. findRoute
+// runs on the path worker and reads only those copies and throwaway rooms built from the seed, never a live Dungeon,
+// so the map's lock is only taken to look rooms up.
+public class RoomGraph {
+    private static final int[] SIDE_DX = {-1, 0, 1, 0}; // Left, up, right, down
+    private static final int[] SIDE_DY = {0, -1, 0, 1};
+    private static final int UNREACHABLE = DistanceField.UNREACHABLE;
+    private static final int SLOTS = 5; // Nodes per room: a door on each side, then the goal
+    private static final int GOAL = 4;
+    private static final int NONE = -1;
+    private static final int STEP_BACK = -2; // Parent of a door reached by stepping off the start door and back on
+    private static final int EXIT = -1; // Goal tile of a route to the exit, whose position is read from the goal room
+    private static final int INITIAL_ROOMS = 64;
+
+    private final GameMap map;
+    private final int width;
+    private final int height;
+
+    // Path worker only from here on
+    private final LongObjectMap<int[]> unmodifiedDoorDistances = new LongObjectMap<>(); // Survives room eviction
+    private final LongObjectMap<Integer> roomIds = new LongObjectMap<>(); // Handed out on a room's first visit
+    private int[] roomXs;
+    private int[] roomYs;
+    private int[] gScore; // Indexed by node id, roomId * SLOTS + side; valid when visited[node] == generation
+    private int[] parent; // Node the walker came from
+    private int[] visited;
+    private final IndexedMinHeap openSet;
+    private int roomCount;
+    private int generation;
+    private RouteRequest request; // The request being searched
+    private int goalX, goalY;
+    private final int[] goalDoorDistances = new int[4]; // From the goal to each door of the goal room
+    private int goalWorldX, goalWorldY;
+    private int stepOffX, stepOffY; // Floor tile next to the start door, for the STEP_BACK waypoint
+    private long cachedGoalRoom = Long.MIN_VALUE; // Last goal room that wasn't copied, so it matches the seed
+    private int cachedRequestX, cachedRequestY, cachedGoalX, cachedGoalY;
+    private final int[] cachedGoalDoorDistances = new int[4];
+
+    public RoomGraph(GameMap map) {
+        this.map = map;
+        this.width = map.getDungeonWidth();
+        this.height = map.getDungeonHeight();
+
+        this.roomXs = new int[INITIAL_ROOMS];
+        this.roomYs = new int[INITIAL_ROOMS];
+        this.gScore = new int[INITIAL_ROOMS * SLOTS];
+        this.parent = new int[INITIAL_ROOMS * SLOTS];
+        this.visited = new int[INITIAL_ROOMS * SLOTS];
+        this.openSet = new IndexedMinHeap(INITIAL_ROOMS * SLOTS);
+    }
+
+    // Game thread: copy what a route from the start tile to the map's exit needs from the rooms in play
+    public RouteRequest prepareRouteToExit(Dungeon from, int startX, int startY) {
+        return prepareRoute(from, startX, startY, map.getExitRoomX(), map.getExitRoomY(), EXIT, EXIT);
+    }
+
+    // Game thread: copy what a route from the start tile to the goal tile needs from the rooms in play
+    public RouteRequest prepareRoute(Dungeon from, int startX, int startY, int goalRoomX, int goalRoomY, int goalX, int goalY) {
+        RouteRequest request = new RouteRequest(from.getGridX(), from.getGridY(), startX, startY, goalRoomX, goalRoomY, goalX, goalY);
+        request.copy(from);
+        Dungeon goal = map.getLoadedDungeon(goalRoomX, goalRoomY);
+        if (goal != null) request.copy(goal);
+
+        for (Dungeon dungeon : map.getModifiedDungeons()) {
+            int[] doorDistances = dungeon.getDoorDistances();
+            if (doorDistances != null) { // Replaced rather than changed in place, so the worker can share it
+                request.doorDistances.put(RoomIndex.pack(dungeon.getGridX(), dungeon.getGridY()), doorDistances);
+            } else {
+                request.copy(dungeon);
+            }
+        }
+        return request;
+    }
+
+    // Path worker: A* over the door graph; returns the waypoints to walk to in order, or null if the goal can't be
+    // reached or the search was cancelled. Every leg takes at least one step, so an empty route means the walker
+    // already stands on the goal.
+    public List<Waypoint> findRoute(RouteRequest request, BooleanSupplier cancelled) {
+        this.request = request;
+        try {
+            return search(cancelled);
+        } finally {
+            this.request = null; // Don't hold on to the copies between searches
+        }
+    }
+
+    private List<Waypoint> search(BooleanSupplier cancelled) {
+        Dungeon from = request.copies.get(RoomIndex.pack(request.startRoomX, request.startRoomY));
+        int startX = request.startX;
+        int startY = request.startY;
+        int goalRoomX = request.goalRoomX;
+        int goalRoomY = request.goalRoomY;
+
+        resolveGoal();
+        boolean inGoalRoom = from.getGridX() == goalRoomX && from.getGridY() == goalRoomY;
+        if (inGoalRoom && startX == goalX && startY == goalY) return List.of();
+
+        nextGeneration();
+        this.goalWorldX = goalRoomX * (width - 1) + goalX;
+        this.goalWorldY = goalRoomY * (height - 1) + goalY;
+        int goal = roomId(goalRoomX, goalRoomY) * SLOTS + GOAL;
+
+        // Leave the starting room through any of its doors, or walk straight to the goal if it is in this room. Standing
+        // on a door, which is where entering a room leaves the walker, doesn't cross it: going back through it takes a
+        // step off and a step back on.
+        int[] startDistances = distancesFrom(from, startX, startY);
+        for (int side = 0; side < 4; side++) {
+            if (startX != doorX(side) || startY != doorY(side)) {
+                relaxDoor(from.getGridX(), from.getGridY(), side, startDistances[doorIndex(side)], NONE);
+            } else if (findStepOff(from, startX, startY)) {
+                relaxDoor(from.getGridX(), from.getGridY(), side, 2, STEP_BACK);
+            }
+        }
+        if (inGoalRoom) {
+            relax(goal, startDistances[goalY * width + goalX], NONE);
+        }
+
+        while (!openSet.isEmpty()) {
+            if (cancelled != null && cancelled.getAsBoolean()) return null;
+
+            int node = openSet.poll();
+            if (node == goal) {
+                return reconstructRoute(from, startX, startY, goal, goalRoomX, goalRoomY);
+            }
+
+            int room = node / SLOTS;
+            int side = node % SLOTS;
+            int roomX = roomXs[room];
+            int roomY = roomYs[room];
+            int[] doorDistances = getDoorDistances(roomX, roomY);
+            for (int next = 0; next < 4; next++) {
+                if (next == side) continue;
+                int distance = doorDistances[side * 4 + next];
+                if (distance != UNREACHABLE) relaxDoor(roomX, roomY, next, gScore[node] + distance, node);
+            }
+            if (roomX == goalRoomX && roomY == goalRoomY) {
+                int distance = goalDoorDistances[side];
+                if (distance != UNREACHABLE) relax(goal, gScore[node] + distance, node);
+            }
+        }
+
+        return null; // No route found
+    }
+
+    // Find the goal tile and its distances to the doors of its room. A goal room that wasn't copied is rebuilt from
+    // the seed, so its result is kept for the next search, which usually asks for the same exit again.
+    private void resolveGoal() {
+        long key = RoomIndex.pack(request.goalRoomX, request.goalRoomY);
+        Dungeon copy = request.copies.get(key);
+        if (copy == null && key == cachedGoalRoom && request.goalX == cachedRequestX && request.goalY == cachedRequestY) {
+            goalX = cachedGoalX;
+            goalY = cachedGoalY;
+            System.arraycopy(cachedGoalDoorDistances, 0, goalDoorDistances, 0, 4);
+            return;
+        }
+
+        Dungeon goal = copy != null ? copy : map.createDetachedDungeon(request.goalRoomX, request.goalRoomY);
+        goalX = request.goalX == EXIT ? goal.getExitX() : request.goalX;
+        goalY = request.goalY == EXIT ? goal.getExitY() : request.goalY;
+        int[] distances = distancesFrom(goal, goalX, goalY);
+        for (int side = 0; side < 4; side++) {
+            goalDoorDistances[side] = distances[doorIndex(side)];
+        }
+
+        if (copy == null) {
+            cachedGoalRoom = key;
+            cachedRequestX = request.goalX;
+            cachedRequestY = request.goalY;
+            cachedGoalX = goalX;
+            cachedGoalY = goalY;
+            System.arraycopy(goalDoorDistances, 0, cachedGoalDoorDistances, 0, 4);
+        }
+    }
+
+    // Walking onto a door moves the walker to the facing door of the neighboring room
+    private void relaxDoor(int roomX, int roomY, int side, int g, int previous) {
+        int nextX = roomX + SIDE_DX[side];
+        int nextY = roomY + SIDE_DY[side];
+        if (g == UNREACHABLE || !map.hasRoom(nextX, nextY)) return;
+        relax(roomId(nextX, nextY) * SLOTS + (side + 2) % 4, g, previous);
+    }
+
+    // Walkers can only step off a door onto floor
+    private boolean findStepOff(Dungeon dungeon, int doorX, int doorY) {
+        for (int side = 0; side < 4; side++) {
+            int x = doorX + SIDE_DX[side];
+            int y = doorY + SIDE_DY[side];
+            if (x < 0 || x >= width || y < 0 || y >= height || dungeon.getBaseTileType(x, y) != EntityType.FLOOR) continue;
+
+            stepOffX = x;
+            stepOffY = y;
+            return true;
+        }
+        return false;
+    }
+
+    private void relax(int node, int g, int previous) {
+        if (visited[node] == generation && gScore[node] <= g) return;
+
+        visited[node] = generation;
+        gScore[node] = g;
+        parent[node] = previous;
+        int h = heuristic(node);
+        openSet.insertOrDecrease(node, g + h, h);
+    }
+
+    // Manhattan distance in a world space where paired doors share a coordinate, since crossing a door is free
+    private int heuristic(int node) {
+        int side = node % SLOTS;
+        if (side == GOAL) return 0;
+        int room = node / SLOTS;
+        int worldX = roomXs[room] * (width - 1) + doorX(side);
+        int worldY = roomYs[room] * (height - 1) + doorY(side);
+        return Math.abs(worldX - goalWorldX) + Math.abs(worldY - goalWorldY);
+    }
+
+    // Each node's waypoint is the door it was reached through, on the side of the room the walker came from
+    private List<Waypoint> reconstructRoute(Dungeon from, int startX, int startY, int goal, int goalRoomX, int goalRoomY) {
+        int length = 0;
+        int node = goal;
+        for (; node >= 0; node = parent[node]) length++;
+        if (node == STEP_BACK) length++;
+
+        Waypoint[] route = new Waypoint[length];
+        route[--length] = new Waypoint(goalRoomX, goalRoomY, goalX, goalY);
+        for (node = parent[goal]; node >= 0; node = parent[node]) {
+            int room = node / SLOTS;
+            int side = node % SLOTS;
+            int exitSide = (side + 2) % 4;
+            route[--length] = new Waypoint(roomXs[room] + SIDE_DX[side], roomYs[room] + SIDE_DY[side], doorX(exitSide), doorY(exitSide));
+        }
+        if (node == STEP_BACK) route[--length] = new Waypoint(from.getGridX(), from.getGridY(), stepOffX, stepOffY);
+
+        // A first leg to where the walker already stands would finish without a step and strand the walker
+        Waypoint first = route[0];
+        if (first.roomX() == from.getGridX() && first.roomY() == from.getGridY() && first.x() == startX && first.y() == startY) {
+            throw new IllegalStateException("Route starts with an empty leg at (" + startX + ", " + startY + ")");
+        }
+        return List.of(route);
+    }
+
+    private int roomId(int roomX, int roomY) {
+        long key = RoomIndex.pack(roomX, roomY);
+        Integer id = roomIds.get(key);
+        if (id != null) return id;
+
+        if (roomCount == roomXs.length) grow(roomCount * 2);
+        roomXs[roomCount] = roomX;
+        roomYs[roomCount] = roomY;
+        roomIds.put(key, roomCount);
+        return roomCount++;
+    }
+
+    // Nodes of rooms that get an id later read as unvisited, since their stamps start at 0
+    private void grow(int rooms) {
+        roomXs = Arrays.copyOf(roomXs, rooms);
+        roomYs = Arrays.copyOf(roomYs, rooms);
+        gScore = Arrays.copyOf(gScore, rooms * SLOTS);
+        parent = Arrays.copyOf(parent, rooms * SLOTS);
+        visited = Arrays.copyOf(visited, rooms * SLOTS);
+        openSet.ensureCapacity(rooms * SLOTS);
+    }
+
+    private void nextGeneration() {
+        openSet.clear();
+        if (++generation == Integer.MAX_VALUE) { // Wrapped around: start over with clean stamps
+            Arrays.fill(visited, 0);
+            generation = 1;
+        }
+    }
+
+    // Door-to-door distances of a room as a 4x4 matrix indexed by side. Unmodified rooms are cached here, so searching
+    // them again doesn't rebuild them; modified rooms keep their own cache until their tiles change again.
+    private int[] getDoorDistances(int roomX, int roomY) {
+        long key = RoomIndex.pack(roomX, roomY);
+        int[] known = request.doorDistances.get(key);
+        if (known != null) return known;
+
+        Dungeon copy = request.copies.get(key);
+        if (copy == null || !copy.isModified()) {
+            int[] cached = unmodifiedDoorDistances.get(key);
+            if (cached != null) return cached;
+        }
+
+        Dungeon dungeon = copy != null ? copy : map.createDetachedDungeon(roomX, roomY);
+        int[] doorDistances = computeDoorDistances(dungeon);
+        if (!dungeon.isModified()) unmodifiedDoorDistances.put(key, doorDistances);
+        return doorDistances;
+    }
+
+    // Sides without a neighboring room have no door, so they get no distance field
+    private int[] computeDoorDistances(Dungeon dungeon) {
+        int[] doorDistances = dungeon.getDoorDistances();
+        if (doorDistances != null) return doorDistances;
+
+        doorDistances = new int[16];
+        Arrays.fill(doorDistances, UNREACHABLE);
+        for (int from = 0; from < 4; from++) {
+            if (!map.hasRoom(dungeon.getGridX() + SIDE_DX[from], dungeon.getGridY() + SIDE_DY[from])) continue;
+
+            int[] distances = distancesFrom(dungeon, doorX(from), doorY(from));
+            for (int to = 0; to < 4; to++) {
+                doorDistances[from * 4 + to] = distances[doorIndex(to)];
+            }
+        }
+        dungeon.setDoorDistances(doorDistances);
+        return doorDistances;
+    }
+
+    // Distances are symmetric for walkers, so the field towards a tile also holds the distances from it
+    private int[] distancesFrom(Dungeon dungeon, int sourceX, int sourceY) {
+        return dungeon.getDistanceField(sourceX, sourceY).getDistances();
+    }
+
+    private int doorX(int side) {
+        return side == 0 ? 0 : side == 2 ? width - 1 : width / 2;
+    }
+
+    private int doorY(int side) {
+        return side == 1 ? 0 : side == 3 ? height - 1 : height / 2;
+    }
+
+    private int doorIndex(int side) {
+        return doorY(side) * width + doorX(side);
+    }
+
+    // The rooms a route search reads, copied on the game thread while nothing else changes them
+    public static final class RouteRequest {
+        private final int startRoomX, startRoomY, startX, startY;
+        private final int goalRoomX, goalRoomY, goalX, goalY;
+        private final LongObjectMap<Dungeon> copies = new LongObjectMap<>();
+        private final LongObjectMap<int[]> doorDistances = new LongObjectMap<>(); // Of modified rooms that weren't copied
+        private final List<Dungeon> sources = new ArrayList<>(); // Live room of each copy, in the order copied
+        private final List<Dungeon> copied = new ArrayList<>();
+        private final List<Integer> tileVersions = new ArrayList<>(); // Of each live room when it was copied
+
+        private RouteRequest(int startRoomX, int startRoomY, int startX, int startY, int goalRoomX, int goalRoomY, int goalX, int goalY) {
+            this.startRoomX = startRoomX;
+            this.startRoomY = startRoomY;
+            this.startX = startX;
+            this.startY = startY;
+            this.goalRoomX = goalRoomX;
+            this.goalRoomY = goalRoomY;
+            this.goalX = goalX;
+            this.goalY = goalY;
+        }
+
+        private void copy(Dungeon source) {
+            long key = RoomIndex.pack(source.getGridX(), source.getGridY());
+            if (copies.get(key) != null) return;
+
+            Dungeon copy = source.detachedCopy();
+            copy.setDoorDistances(source.getDoorDistances());
+            copies.put(key, copy);
+            sources.add(source);
+            copied.add(copy);
+            tileVersions.add(source.getTileVersion());
+        }
+
+        // Game thread, once the search is done: hand door distances worked out on the copies back to the rooms they
+        // were copied from, unless a tile changed since, so those rooms aren't searched from scratch again
+        public void keepDoorDistances() {
+            for (int i = 0; i < sources.size(); i++) {
+                Dungeon source = sources.get(i);
+                int[] computed = copied.get(i).getDoorDistances();
+                if (computed != null && source.getDoorDistances() == null && source.getTileVersion() == tileVersions.get(i)) {
+                    source.setDoorDistances(computed);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package game.object;
+
+import game.util.LongObjectMap;
+
+// Sparse set of occupied room cells, stored as 64x64 bit chunks keyed by packed chunk coordinates,
+// so memory follows the number of rooms rather than the grid area
+public class RoomIndex implements RoomSet {
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final LongObjectMap<long[]> chunks = new LongObjectMap<>();
+    private int size;
+
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    public static int unpackX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int unpackY(long key) {
+        return (int) key;
+    }
+
+    @Override
+    public boolean contains(int x, int y) {
+        long[] chunk = chunks.get(pack(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT));
+        return chunk != null && (chunk[y & CHUNK_MASK] & (1L << (x & CHUNK_MASK))) != 0;
+    }
+
+    // Returns false if the cell was already occupied
+    public boolean add(int x, int y) {
+        long chunkKey = pack(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+        long[] chunk = chunks.get(chunkKey);
+        if (chunk == null) {
+            chunk = new long[CHUNK_SIZE]; // One row bitset per chunk row
+            chunks.put(chunkKey, chunk);
+        }
+
+        long bit = 1L << (x & CHUNK_MASK);
+        if ((chunk[y & CHUNK_MASK] & bit) != 0) return false;
+        chunk[y & CHUNK_MASK] |= bit;
+        size++;
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Visit every room, chunk by chunk; the order is stable for a given set of rooms
+    @Override
+    public void forEach(RoomConsumer consumer) {
+        for (int slot = 0; slot < chunks.capacity(); slot++) {
+            long[] chunk = chunks.valueAt(slot);
+            if (chunk == null) continue;
+
+            int baseX = unpackX(chunks.keyAt(slot)) << CHUNK_SHIFT;
+            int baseY = unpackY(chunks.keyAt(slot)) << CHUNK_SHIFT;
+            for (int row = 0; row < CHUNK_SIZE; row++) {
+                for (long bits = chunk[row]; bits != 0; bits &= bits - 1) {
+                    consumer.accept(baseX + Long.numberOfTrailingZeros(bits), baseY + row);
+                }
+            }
+        }
+    }
+}
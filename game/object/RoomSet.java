@@ -0,0 +1,14 @@
+package game.object;
+
+// Read-only view of which grid cells hold a room
+public interface RoomSet {
+    boolean contains(int x, int y);
+
+    int size();
+
+    void forEach(RoomConsumer consumer);
+
+    interface RoomConsumer {
+        void accept(int x, int y);
+    }
+}
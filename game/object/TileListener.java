@@ -0,0 +1,8 @@
+package game.object;
+
+import game.object.entity.EntityType;
+
+// Notified when a tile of a materialized room changes type, e.g. to keep an overview in sync without rescanning rooms
+public interface TileListener {
+    void tileChanged(Dungeon dungeon, int x, int y, EntityType type);
+}
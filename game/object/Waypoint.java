@@ -0,0 +1,5 @@
+package game.object;
+
+// A tile to walk to inside the room at (roomX, roomY); one leg of a cross-room route
+public record Waypoint(int roomX, int roomY, int x, int y) {
+}
@@ -1,14 +1,20 @@
 package game.object.entity;
 
-import game.Constants;
 import game.Game;
+import game.object.Dungeon;
+import game.object.GameMap;
 
 public abstract class DynamicEntity implements Entity {
     protected int x;
     protected int y;
     protected EntityType type;
     protected String imagePath;
+    protected int spriteIndex;
     protected Game game;
+    protected int previousX; // Tile the current step started from
+    protected int previousY;
+    protected long stepStart; // System.nanoTime() when the current step started
+    protected long stepNanos; // 0 when the entity is not animated
 
     public int getX() {
         return x;
@@ -26,38 +32,78 @@ public abstract class DynamicEntity implements Entity {
         return imagePath;
     }
 
+    public int spriteIndex() {
+        return spriteIndex;
+    }
+
+    public int getPreviousX() {
+        return previousX;
+    }
+
+    public int getPreviousY() {
+        return previousY;
+    }
+
+    // Draw the entity sliding from its previous tile to its current one over the given time
+    public void animateStep(long start, long nanos) {
+        this.stepStart = start;
+        this.stepNanos = nanos;
+    }
+
+    // How far along the current step the entity is drawn at the given time, from 0 to 1
+    public float stepProgress(long now) {
+        if (this.stepNanos == 0 || now - this.stepStart >= this.stepNanos) return 1;
+        return Math.max(0, (now - this.stepStart) / (float) this.stepNanos);
+    }
+
     public void move(int dx, int dy) {
         this.game.getRenderer().replacePreviousTile(this); // Clear the previous player position and redraw either a door or floor
 
+        this.previousX = this.x;
+        this.previousY = this.y;
         this.x += dx;
         this.y += dy;
 
         if (this.game.getGameState().getCurrentDungeon().isDoor(this.x, this.y)) {
             moveToAdjacentRoom(this.x, this.y);
+            this.previousX = this.x; // No sliding across rooms
+            this.previousY = this.y;
         }
 
         if (this.x == this.game.getGameState().getCurrentDungeon().getExitX()
                 && this.y == this.game.getGameState().getCurrentDungeon().getExitY()) {
             game.advanceToNextLevel();
+            return; // The next level has its own player
         }
 
         this.game.getGameState().getCurrentDungeon().setTile(this.x, this.y, this); // Draw the player at the new position
+    }
 
-        this.game.repaint();
+    // Lightweight move for crowds of agents: updates the position and the occupancy marker only, without redrawing,
+    // walking through doors or reaching the exit
+    public void step(Dungeon dungeon, int dx, int dy) {
+        dungeon.moveOccupant(this.x, this.y, this.x + dx, this.y + dy);
+        this.x += dx;
+        this.y += dy;
     }
 
     private void moveToAdjacentRoom(int newX, int newY) {
+        Dungeon current = this.game.getGameState().getCurrentDungeon();
+        GameMap map = this.game.getMap();
+
+        // The neighboring room is built here the first time the player walks through the door; all rooms of a map
+        // have the same size
         if (newX == 0) {
-            this.game.getGameState().setCurrentDungeon(this.game.getMap().getGrid()[this.game.getGameState().getCurrentDungeon().getGridX() - 1][this.game.getGameState().getCurrentDungeon().getGridY()]); // Left edge
-            this.x = Constants.GAME_TILE_NUM - 1;
-        } else if (newX == Constants.GAME_TILE_NUM - 1) {
-            this.game.getGameState().setCurrentDungeon(this.game.getMap().getGrid()[this.game.getGameState().getCurrentDungeon().getGridX() + 1][this.game.getGameState().getCurrentDungeon().getGridY()]); // Right edge
+            this.game.getGameState().setCurrentDungeon(map.getDungeon(current.getGridX() - 1, current.getGridY())); // Left edge
+            this.x = current.getWidth() - 1;
+        } else if (newX == current.getWidth() - 1) {
+            this.game.getGameState().setCurrentDungeon(map.getDungeon(current.getGridX() + 1, current.getGridY())); // Right edge
             this.x = 0;
         } else if (newY == 0) {
-            this.game.getGameState().setCurrentDungeon(this.game.getMap().getGrid()[this.game.getGameState().getCurrentDungeon().getGridX()][this.game.getGameState().getCurrentDungeon().getGridY() - 1]); // Top edge
-            this.y = Constants.GAME_TILE_NUM - 1;
-        } else if (newY == Constants.GAME_TILE_NUM - 1) {
-            this.game.getGameState().setCurrentDungeon(this.game.getMap().getGrid()[this.game.getGameState().getCurrentDungeon().getGridX()][this.game.getGameState().getCurrentDungeon().getGridY() + 1]); // Bottom edge
+            this.game.getGameState().setCurrentDungeon(map.getDungeon(current.getGridX(), current.getGridY() - 1)); // Top edge
+            this.y = current.getHeight() - 1;
+        } else if (newY == current.getHeight() - 1) {
+            this.game.getGameState().setCurrentDungeon(map.getDungeon(current.getGridX(), current.getGridY() + 1)); // Bottom edge
             this.y = 0;
         }
     }
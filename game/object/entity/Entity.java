@@ -3,4 +3,6 @@ package game.object.entity;
 public interface Entity {
     EntityType type();
     String imagePath();
+
+    int spriteIndex(); // Slot in the ImageCache sprite atlas
 }
@@ -1,13 +1,16 @@
 package game.object.entity;
 
+import game.Constants;
 import game.Game;
+import game.ImageCache;
 import game.object.Dungeon;
 
 public class Player extends DynamicEntity {
-    public Player(Dungeon dungeon, int x, int y, String imagePath, Game game) {
+    public Player(Dungeon dungeon, int x, int y, PlayerCharacter character, Game game) {
         this.x = x;
         this.y = y;
-        this.imagePath = imagePath;
+        this.imagePath = Constants.PLAYER_IMAGE_MAP.get(character);
+        this.spriteIndex = ImageCache.spriteIndex(character);
         this.type = EntityType.PLAYER;
         this.game = game;
         dungeon.setTile(x, y, this);
@@ -1,9 +1,30 @@
 package game.object.entity;
 
 import game.Constants;
+import game.ImageCache;
 
 public record StaticEntity(EntityType type) implements Entity {
+    private static final StaticEntity[] FLYWEIGHTS = createFlyweights();
+
+    // Shared instances, so tile reads and writes never allocate
+    public static StaticEntity of(EntityType type) {
+        return FLYWEIGHTS[type.ordinal()];
+    }
+
+    private static StaticEntity[] createFlyweights() {
+        EntityType[] types = EntityType.values();
+        StaticEntity[] flyweights = new StaticEntity[types.length];
+        for (EntityType type : types) {
+            flyweights[type.ordinal()] = new StaticEntity(type);
+        }
+        return flyweights;
+    }
+
     public String imagePath() {
         return Constants.OBJECT_IMAGE_MAP.get(type);
     }
+
+    public int spriteIndex() {
+        return ImageCache.spriteIndex(type);
+    }
 }
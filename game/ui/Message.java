@@ -7,7 +7,8 @@ import javax.swing.*;
 public class Message {
     private final Game game;
     private String text;
-    private Timer timer;
+    private Timer timer; // Clears the text without the game loop
+    private long expiresAt; // System.nanoTime() at which the game loop clears the text, 0 if it doesn't
 
     public Message(String text, Game game) {
         this.text = text;
@@ -24,6 +25,11 @@ public class Message {
             timer.stop();
         }
 
+        if (this.game.getGameLoop() != null) { // The text belongs to the loop's thread, so its update tick clears it
+            this.expiresAt = System.nanoTime() + duration * 1_000_000L;
+            return;
+        }
+
         this.timer = new Timer(duration, _ -> {
             this.text = null; // Clear the message after the duration
             this.game.repaint();
@@ -33,4 +39,12 @@ public class Message {
 
         this.game.repaint();
     }
+
+    // Called by the game loop on every update tick
+    public void update(long now) {
+        if (this.expiresAt != 0 && now - this.expiresAt >= 0) {
+            this.text = null;
+            this.expiresAt = 0;
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package game.ui;
+
+import game.Constants;
+import game.object.Dungeon;
+import game.object.GameMap;
+import game.object.RoomIndex;
+import game.object.TileListener;
+import game.object.entity.EntityType;
+import game.util.LongObjectMap;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// Overview of the rooms the player has visited, kept in a small image. Small maps get one pixel per tile, large ones
+// one pixel per block of rooms. A room is painted once, when it is first visited; after that only tiles reported
+// through TileListener are repainted, so drawing the minimap never scans rooms.
+public class Minimap implements TileListener {
+    private static final Color[] TILE_COLORS = createTileColors();
+    private static final Color PLAYER_COLOR = Color.RED;
+
+    private final BufferedImage image;
+    private final boolean perTile;
+    private final int roomWidth;
+    private final int roomHeight;
+    private final int roomsPerPixel; // Only when not per tile
+    private final LongObjectMap<Boolean> visited = new LongObjectMap<>();
+    private Dungeon lastVisited;
+
+    public Minimap(GameMap map) {
+        this.roomWidth = map.getDungeonWidth();
+        this.roomHeight = map.getDungeonHeight();
+        int grid = map.getGridSize();
+
+        this.perTile = (long) grid * Math.max(this.roomWidth, this.roomHeight) <= Constants.MINIMAP_MAX_SIZE;
+        this.roomsPerPixel = this.perTile ? 1 : (grid + Constants.MINIMAP_MAX_SIZE - 1) / Constants.MINIMAP_MAX_SIZE;
+        int width = this.perTile ? grid * this.roomWidth : (grid + this.roomsPerPixel - 1) / this.roomsPerPixel;
+        int height = this.perTile ? grid * this.roomHeight : width;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    // Paint the room the first time it is entered
+    public void visit(Dungeon dungeon) {
+        if (dungeon == this.lastVisited) return;
+        this.lastVisited = dungeon;
+
+        long key = RoomIndex.pack(dungeon.getGridX(), dungeon.getGridY());
+        if (this.visited.get(key) != null) return;
+        this.visited.put(key, Boolean.TRUE);
+
+        if (!this.perTile) {
+            this.image.setRGB(dungeon.getGridX() / this.roomsPerPixel, dungeon.getGridY() / this.roomsPerPixel, TILE_COLORS[EntityType.FLOOR.ordinal()].getRGB());
+            return;
+        }
+        for (int y = 0; y < dungeon.getHeight(); y++) {
+            for (int x = 0; x < dungeon.getWidth(); x++) {
+                paintTile(dungeon, x, y, dungeon.getBaseTileType(x, y));
+            }
+        }
+    }
+
+    @Override
+    public void tileChanged(Dungeon dungeon, int x, int y, EntityType type) {
+        if (!this.perTile || this.visited.get(RoomIndex.pack(dungeon.getGridX(), dungeon.getGridY())) == null) return; // Not revealed yet
+        paintTile(dungeon, x, y, type);
+    }
+
+    private void paintTile(Dungeon dungeon, int x, int y, EntityType type) {
+        this.image.setRGB(dungeon.getGridX() * this.roomWidth + x, dungeon.getGridY() * this.roomHeight + y, TILE_COLORS[type.ordinal()].getRGB());
+    }
+
+    // Draw the minimap scaled up to about MINIMAP_DISPLAY_SIZE pixels, with its top right corner at the given point
+    public void render(Graphics g, Dungeon current, int playerX, int playerY, int right, int top) {
+        int scale = Math.max(1, Constants.MINIMAP_DISPLAY_SIZE / Math.max(this.image.getWidth(), this.image.getHeight()));
+        int width = this.image.getWidth() * scale;
+        int height = this.image.getHeight() * scale;
+        int left = right - width;
+
+        g.setColor(Constants.MINIMAP_BACKGROUND);
+        g.fillRect(left, top, width, height);
+        g.drawImage(this.image, left, top, width, height, null);
+
+        int markerX, markerY;
+        if (this.perTile) {
+            markerX = current.getGridX() * this.roomWidth + playerX;
+            markerY = current.getGridY() * this.roomHeight + playerY;
+        } else {
+            markerX = current.getGridX() / this.roomsPerPixel;
+            markerY = current.getGridY() / this.roomsPerPixel;
+        }
+        g.setColor(PLAYER_COLOR);
+        g.fillRect(left + markerX * scale, top + markerY * scale, Math.max(2, scale), Math.max(2, scale));
+    }
+
+    private static Color[] createTileColors() {
+        Color[] colors = new Color[EntityType.values().length];
+        colors[EntityType.WALL.ordinal()] = new Color(60, 60, 60);
+        colors[EntityType.FLOOR.ordinal()] = new Color(170, 170, 170);
+        colors[EntityType.DOOR.ordinal()] = new Color(140, 90, 40);
+        colors[EntityType.EXIT.ordinal()] = new Color(230, 230, 255);
+        colors[EntityType.PLAYER.ordinal()] = PLAYER_COLOR;
+        return colors;
+    }
+}
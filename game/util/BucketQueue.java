@@ -0,0 +1,98 @@
+package game.util;
+
+import java.util.Arrays;
+
+// Dial's priority queue over node ids 0..capacity-1 for small integer keys that never drop below the last key
+// polled, as in A* with integer step costs and a consistent heuristic. Keys live in a ring of buckets holding
+// intrusive doubly linked lists, so insert, decrease-key and poll are O(1) apart from skipping empty buckets.
+// All keys queued at once must lie within maxKeySpread of each other.
+public class BucketQueue {
+    private static final int NONE = -1;
+
+    private final int[] heads; // First node of each bucket
+    private final int mask;
+    private final int[] next; // Indexed by node id
+    private final int[] previous;
+    private final int[] keys;
+    private final int[] stamps; // A node is queued when its stamp matches the current one
+    private int stamp = 1;
+    private int size;
+    private int cursor; // Key of the bucket polled last; no queued key is smaller
+
+    public BucketQueue(int capacity, int maxKeySpread) {
+        int buckets = Integer.highestOneBit(Math.max(1, maxKeySpread)) << 1; // Power of two above the spread
+        this.heads = new int[buckets];
+        this.mask = buckets - 1;
+        this.next = new int[capacity];
+        this.previous = new int[capacity];
+        this.keys = new int[capacity];
+        this.stamps = new int[capacity];
+        Arrays.fill(heads, NONE);
+    }
+
+    public void clear() {
+        if (size > 0) Arrays.fill(heads, NONE);
+        size = 0;
+        cursor = 0;
+        if (++stamp == Integer.MAX_VALUE) { // Wrapped around: start over with clean stamps
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int node) {
+        return stamps[node] == stamp;
+    }
+
+    // Insert the node, or move it to a smaller key if it is already queued with a bigger one
+    public void insertOrDecrease(int node, int key) {
+        if (contains(node)) {
+            if (key >= keys[node]) return;
+            unlink(node);
+        } else {
+            stamps[node] = stamp;
+            size++;
+        }
+        if (size == 1 || key < cursor) cursor = key;
+
+        keys[node] = key;
+        int bucket = key & mask;
+        next[node] = heads[bucket];
+        previous[node] = NONE;
+        if (heads[bucket] != NONE) previous[heads[bucket]] = node;
+        heads[bucket] = node;
+    }
+
+    // Remove and return a node with the smallest key
+    public int poll() {
+        while (heads[cursor & mask] == NONE) cursor++;
+
+        int node = heads[cursor & mask];
+        unlink(node);
+        stamps[node] = 0;
+        size--;
+        return node;
+    }
+
+    public int peekKey() {
+        while (heads[cursor & mask] == NONE) cursor++;
+        return cursor;
+    }
+
+    private void unlink(int node) {
+        if (previous[node] != NONE) {
+            next[previous[node]] = next[node];
+        } else {
+            heads[keys[node] & mask] = next[node];
+        }
+        if (next[node] != NONE) previous[next[node]] = previous[node];
+    }
+}
@@ -0,0 +1,123 @@
+package game.util;
+
+import java.util.Arrays;
+
+// Binary min-heap over node ids 0..capacity-1 with decrease-key; ties on the key are broken by the smaller tie value.
+// clear() is O(1): node positions are only trusted when their stamp matches the current one.
+public class IndexedMinHeap {
+    private int[] heap; // Node ids in heap order
+    private int[] keys; // Indexed by node id
+    private int[] ties; // Indexed by node id
+    private int[] positions; // Heap slot of each node id
+    private int[] stamps; // Positions are valid when the stamp matches
+    private int stamp = 1;
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.keys = new int[capacity];
+        this.ties = new int[capacity];
+        this.positions = new int[capacity];
+        this.stamps = new int[capacity];
+    }
+
+    // Make room for node ids up to capacity-1; queued nodes stay queued
+    public void ensureCapacity(int capacity) {
+        if (capacity <= heap.length) return;
+        heap = Arrays.copyOf(heap, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        ties = Arrays.copyOf(ties, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        stamps = Arrays.copyOf(stamps, capacity);
+    }
+
+    public void clear() {
+        size = 0;
+        if (++stamp == Integer.MAX_VALUE) { // Wrapped around: start over with clean stamps
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int node) {
+        return stamps[node] == stamp && positions[node] >= 0;
+    }
+
+    // Insert the node, or lower its key if it is already queued with a worse one
+    public void insertOrDecrease(int node, int key, int tie) {
+        if (contains(node)) {
+            if (!less(key, tie, keys[node], ties[node])) return;
+            keys[node] = key;
+            ties[node] = tie;
+            siftUp(positions[node]);
+        } else {
+            stamps[node] = stamp;
+            keys[node] = key;
+            ties[node] = tie;
+            heap[size] = node;
+            positions[node] = size;
+            siftUp(size++);
+        }
+    }
+
+    public int peekKey() {
+        return keys[heap[0]];
+    }
+
+    public int poll() {
+        int top = heap[0];
+        positions[top] = -1; // Stays stamped, so it reads as no longer queued
+        if (--size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int slot) {
+        int node = heap[slot];
+        while (slot > 0) {
+            int parentSlot = (slot - 1) >>> 1;
+            int parent = heap[parentSlot];
+            if (!less(keys[node], ties[node], keys[parent], ties[parent])) break;
+            heap[slot] = parent;
+            positions[parent] = slot;
+            slot = parentSlot;
+        }
+        heap[slot] = node;
+        positions[node] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int node = heap[slot];
+        int half = size >>> 1;
+        while (slot < half) {
+            int childSlot = 2 * slot + 1;
+            int child = heap[childSlot];
+            int rightSlot = childSlot + 1;
+            if (rightSlot < size && less(keys[heap[rightSlot]], ties[heap[rightSlot]], keys[child], ties[child])) {
+                childSlot = rightSlot;
+                child = heap[childSlot];
+            }
+            if (!less(keys[child], ties[child], keys[node], ties[node])) break;
+            heap[slot] = child;
+            positions[child] = slot;
+            slot = childSlot;
+        }
+        heap[slot] = node;
+        positions[node] = slot;
+    }
+
+    private static boolean less(int key, int tie, int otherKey, int otherTie) {
+        return key < otherKey || (key == otherKey && tie < otherTie);
+    }
+}
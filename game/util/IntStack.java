@@ -0,0 +1,40 @@
+package game.util;
+
+import java.util.Arrays;
+
+// Growable stack of primitive ints, meant to be kept and reused between operations
+public class IntStack {
+    private int[] elements;
+    private int size;
+
+    public IntStack() {
+        this(64);
+    }
+
+    public IntStack(int initialCapacity) {
+        this.elements = new int[Math.max(1, initialCapacity)];
+    }
+
+    public void push(int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+        elements[size++] = value;
+    }
+
+    public int pop() {
+        return elements[--size];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}